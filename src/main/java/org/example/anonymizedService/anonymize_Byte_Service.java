@@ -0,0 +1,375 @@
+package org.example.anonymizedService;
+
+import org.example.monitoring.anonymize_Event;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Variant of the anonymize_Service that works directly on UTF-8 encoded bytes, so that servers can go from the bytes
+ * received on the socket to the bytes sent back without decoding and re-encoding Strings.
+ * It follows exactly the same rules: words are separated by single spaces, trailing [,][.][!][?] are ignored when
+ * comparing, comparison is not case-sensitive and every character of an anonymized word is replaced by "X", except
+ * for its last special character.
+ * Malformed UTF-8 sequences are compared as replacement characters, as String decoding would do, and copied untouched.
+ * Optionally, words matching pattern rules (see anonymize_Rules) are anonymized as well; the rules' automaton runs in
+ * the same pass that looks for the end of each word.
+ * A service can also be given a dictionary of sensitive terms (see term_Dictionary), whose words are anonymized as the
+ * keyword is, in every request handled by that service.
+ */
+
+public class anonymize_Byte_Service {
+    private static final byte[] asciiFold = new byte[128];
+    private static final int replacementChar = 0xFFFD;
+    private final term_Dictionary dictionary;
+
+    static {
+        for (int i = 0; i < asciiFold.length; i++) {
+            asciiFold[i] = (byte) (i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+        }
+    }
+
+    /**
+     * Creates a service that only anonymizes the keyword and the words matching the rules of each request.
+     */
+    public anonymize_Byte_Service(){
+        this(null);
+    }
+
+    /**
+     * Creates a service that also anonymizes every word found in a dictionary of sensitive terms.
+     * @param dictionary Dictionary of sensitive terms, or null
+     */
+    public anonymize_Byte_Service(term_Dictionary dictionary){
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Folds the keyword into the code points used for case-insensitive comparison.
+     * Should be computed once per request and reused for every word of the phrase.
+     * @param keyword Keyword chosen by the client
+     * @return Case-folded code points of the keyword
+     */
+    public static int[] keywordCodePoints(String keyword){
+        byte[] bytes = keyword.getBytes(StandardCharsets.UTF_8);
+        return keywordCodePoints(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    /**
+     * Folds the UTF-8 encoded keyword stored between two positions of a buffer into the code points used
+     * for case-insensitive comparison.
+     * @param source Buffer holding the keyword
+     * @param from Index of the first byte of the keyword
+     * @param to Index right after the last byte of the keyword
+     * @return Case-folded code points of the keyword
+     */
+    public static int[] keywordCodePoints(ByteBuffer source, int from, int to){
+        int[] codePoints = new int[to - from];
+        int count = 0;
+        int i = from;
+        while (i < to) {
+            int length = sequenceLength(source, i, to);
+            codePoints[count++] = fold(codePointAt(source, i, length));
+            i += length;
+        }
+        int[] folded = new int[count];
+        System.arraycopy(codePoints, 0, folded, 0, count);
+        return folded;
+    }
+
+    /**
+     * Anonymizes the bytes between position and limit of the phrase buffer, writing the result into the output buffer
+     * starting at its position. Both positions are advanced.
+     * The anonymized text is never longer than the original, so an output buffer with as many bytes remaining as the
+     * phrase is always enough.
+     * @param phrase UTF-8 encoded statement to be considered
+     * @param out Buffer where the anonymized statement is written
+     * @param keyword Case-folded code points of the keyword (see keywordCodePoints)
+     * @return Number of anonymized occurrences of the keyword
+     */
+    public int byteAnonymizer(ByteBuffer phrase, ByteBuffer out, int[] keyword){
+        return byteAnonymizer(phrase, out, keyword, null);
+    }
+
+    /**
+     * Anonymizes the bytes between position and limit of the phrase buffer, as byteAnonymizer(phrase, out, keyword),
+     * also anonymizing the words that match any of the given rules.
+     * @param phrase UTF-8 encoded statement to be considered
+     * @param out Buffer where the anonymized statement is written
+     * @param keyword Case-folded code points of the keyword (see keywordCodePoints)
+     * @param rules Automaton of the rules to be applied (see anonymize_Rules), or null
+     * @return Number of anonymized words
+     */
+    public int byteAnonymizer(ByteBuffer phrase, ByteBuffer out, int[] keyword, rule_Automaton rules){
+        int counter = anonymize(phrase, phrase.position(), phrase.limit(), out, keyword, rules, null);
+        phrase.position(phrase.limit());
+        return counter;
+    }
+
+    /**
+     * Anonymizes, in place, the bytes between position and limit of the buffer.
+     * Since the anonymized text is never longer than the original, the result always fits; the limit is moved to the
+     * end of the anonymized text.
+     * @param buffer UTF-8 encoded statement to be considered
+     * @param keyword Case-folded code points of the keyword (see keywordCodePoints)
+     * @return Number of anonymized occurrences of the keyword
+     */
+    public int byteAnonymizer(ByteBuffer buffer, int[] keyword){
+        return byteAnonymizer(buffer, keyword, null);
+    }
+
+    /**
+     * Anonymizes, in place, the bytes between position and limit of the buffer, as byteAnonymizer(buffer, keyword),
+     * also anonymizing the words that match any of the given rules.
+     * @param buffer UTF-8 encoded statement to be considered
+     * @param keyword Case-folded code points of the keyword (see keywordCodePoints)
+     * @param rules Automaton of the rules to be applied (see anonymize_Rules), or null
+     * @return Number of anonymized words
+     */
+    public int byteAnonymizer(ByteBuffer buffer, int[] keyword, rule_Automaton rules){
+        return byteAnonymizer(buffer, keyword, rules, null);
+    }
+
+    /**
+     * Anonymizes, in place, the bytes between position and limit of the buffer, as byteAnonymizer(buffer, keyword,
+     * rules), also recording the masked spans, relative to the position, for a "diff" response.
+     * @param buffer UTF-8 encoded statement to be considered
+     * @param keyword Case-folded code points of the keyword (see keywordCodePoints)
+     * @param rules Automaton of the rules to be applied (see anonymize_Rules), or null
+     * @param spans Spans where every masked span is added (see diff_Spans), or null
+     * @return Number of anonymized words
+     */
+    public int byteAnonymizer(ByteBuffer buffer, int[] keyword, rule_Automaton rules, diff_Spans spans){
+        ByteBuffer out = buffer.duplicate();
+        int counter = anonymize(buffer, buffer.position(), buffer.limit(), out, keyword, rules, spans);
+        buffer.limit(out.position());
+        return counter;
+    }
+
+    /**
+     * Converts the statement stored between two indexes in the final result, word by word.
+     * Reading always stays ahead of writing, which is what makes in-place anonymization safe.
+     * (1.) Finds the end of the current word (next space or end of the statement), running the rules' automaton on its
+     * bytes meanwhile. The state reached before the trailing special characters is the one that decides the match.
+     * (2.) If the word, without its trailing special characters, is equal to the keyword, matches a rule or is in the
+     * dictionary, writes it anonymized. Rules are ASCII-only, so a word matching a rule has one character per byte.
+     * The masked bytes (all of them but its last special character) are recorded as a span, if asked for.
+     * (3.) Otherwise, copies it untouched.
+     * (4.) Copies the space separating it from the next word.
+     * @param src Buffer holding the statement
+     * @param from Index of the first byte of the statement
+     * @param to Index right after the last byte of the statement
+     * @param out Buffer where the anonymized statement is written, at its position
+     * @param keyword Case-folded code points of the keyword
+     * @param rules Automaton of the rules to be applied, or null
+     * @param spans Spans where every masked span is added, or null
+     * @return Number of anonymized words
+     */
+    private int anonymize(ByteBuffer src, int from, int to, ByteBuffer out, int[] keyword, rule_Automaton rules,
+                          diff_Spans spans){
+        anonymize_Event event = new anonymize_Event();
+        event.begin();
+        int counter = 0;
+        int wordStart = from;
+        while (wordStart <= to) {
+            // 1.
+            int wordEnd = wordStart;
+            int state = rules == null ? rule_Automaton.dead : rule_Automaton.start;
+            int wordState = state;
+            byte b;
+            while (wordEnd < to && (b = src.get(wordEnd)) != ' ') {
+                if (state != rule_Automaton.dead) {
+                    state = rules.step(state, b);
+                    if (!lastCharChecker(b)) {
+                        wordState = state;
+                    }
+                } else if (wordState != rule_Automaton.dead && !lastCharChecker(b)) {
+                    wordState = rule_Automaton.dead;
+                }
+                wordEnd++;
+            }
+            // 2.
+            int characters = matchedCharacters(src, wordStart, wordEnd, keyword);
+            if (characters < 0 && wordState != rule_Automaton.dead && rules.accepts(wordState)) {
+                characters = wordEnd - wordStart;
+            }
+            if (characters < 0 && dictionary != null) {
+                characters = dictionary.matchedCharacters(src, wordStart, wordEnd);
+            }
+            if (characters >= 0) {
+                wordAnonymizer(src, wordStart, wordEnd, characters, out);
+                counter++;
+                if (spans != null) {
+                    int masked = wordEnd > wordStart && lastCharChecker(src.get(wordEnd - 1)) ? wordEnd - 1 : wordEnd;
+                    spans.add(wordStart - from, masked - wordStart);
+                }
+            } else {
+                // 3.
+                for (int i = wordStart; i < wordEnd; i++) {
+                    out.put(src.get(i));
+                }
+            }
+            // 4.
+            if (wordEnd < to) {
+                out.put((byte) ' ');
+            }
+            wordStart = wordEnd + 1;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.phraseBytes = to - from;
+            event.occurrences = counter;
+            event.rules = rules != null;
+            event.dictionary = dictionary != null;
+            event.commit();
+        }
+        return counter;
+    }
+
+    /**
+     * Compares a word, ignoring its trailing special characters, with the keyword.
+     * ASCII bytes are folded through a lookup table; only multi-byte sequences are decoded into code points.
+     * @param src Buffer holding the word
+     * @param start Index of the first byte of the word
+     * @param end Index right after the last byte of the word
+     * @param keyword Case-folded code points of the keyword
+     * @return Number of characters (UTF-16 units) of the whole word if it matches the keyword, (-1) otherwise
+     */
+    private int matchedCharacters(ByteBuffer src, int start, int end, int[] keyword){
+        int stripped = end;
+        while (stripped > start && lastCharChecker(src.get(stripped - 1))) {
+            stripped--;
+        }
+        int characters = 0;
+        int k = 0;
+        int i = start;
+        while (i < stripped) {
+            if (k == keyword.length) {
+                return -1;
+            }
+            int b = src.get(i);
+            if (b >= 0) {
+                if (asciiFold[b] != keyword[k++]) {
+                    return -1;
+                }
+                characters++;
+                i++;
+            } else {
+                int length = sequenceLength(src, i, stripped);
+                int codePoint = codePointAt(src, i, length);
+                if (fold(codePoint) != keyword[k++]) {
+                    return -1;
+                }
+                characters += Character.charCount(codePoint);
+                i += length;
+            }
+        }
+        if (k != keyword.length) {
+            return -1;
+        }
+        return characters + (end - stripped);
+    }
+
+    /**
+     * Writes an anonymized word: every character becomes "X", except the last one when it is a special character.
+     * @param src Buffer holding the word
+     * @param start Index of the first byte of the word
+     * @param end Index right after the last byte of the word
+     * @param characters Number of characters (UTF-16 units) of the word
+     * @param out Buffer where the anonymized word is written
+     */
+    private void wordAnonymizer(ByteBuffer src, int start, int end, int characters, ByteBuffer out){
+        byte last = end > start ? src.get(end - 1) : 0;
+        boolean special = lastCharChecker(last);
+        int replaced = special ? characters - 1 : characters;
+        for (int i = 0; i < replaced; i++) {
+            out.put((byte) 'X');
+        }
+        if (special) {
+            out.put(last);
+        }
+    }
+
+    /**
+     * Checks whether a byte is one of scope's special characters: [,][.][!][?]
+     * These are all ASCII, so they can never be part of a multi-byte sequence.
+     * @param b Byte to be checked
+     * @return true if it is a special character
+     */
+    static boolean lastCharChecker(byte b){
+        return b == ',' || b == '.' || b == '!' || b == '?';
+    }
+
+    /**
+     * Length of the UTF-8 sequence starting at the given index. Malformed or truncated sequences count as one byte.
+     * @param src Buffer holding the sequence
+     * @param i Index of the leading byte
+     * @param end Index right after the last byte that may belong to the sequence
+     * @return Number of bytes of the sequence (1 to 4)
+     */
+    static int sequenceLength(ByteBuffer src, int i, int end){
+        int b = src.get(i) & 0xFF;
+        int length;
+        if (b < 0x80) {
+            return 1;
+        } else if (b >= 0xC2 && b <= 0xDF) {
+            length = 2;
+        } else if (b >= 0xE0 && b <= 0xEF) {
+            length = 3;
+        } else if (b >= 0xF0 && b <= 0xF4) {
+            length = 4;
+        } else {
+            return 1;
+        }
+        if (i + length > end) {
+            return 1;
+        }
+        for (int j = 1; j < length; j++) {
+            if ((src.get(i + j) & 0xC0) != 0x80) {
+                return 1;
+            }
+        }
+        // Overlong encodings, surrogates and code points above U+10FFFF are malformed as well
+        int second = src.get(i + 1) & 0xFF;
+        if ((b == 0xE0 && second < 0xA0) || (b == 0xED && second > 0x9F)
+                || (b == 0xF0 && second < 0x90) || (b == 0xF4 && second > 0x8F)) {
+            return 1;
+        }
+        return length;
+    }
+
+    /**
+     * Decodes the code point of a UTF-8 sequence whose length was given by sequenceLength.
+     * A single non-ASCII byte is malformed and decodes to the replacement character, as String decoding would.
+     * @param src Buffer holding the sequence
+     * @param i Index of the leading byte
+     * @param length Number of bytes of the sequence
+     * @return Decoded code point
+     */
+    static int codePointAt(ByteBuffer src, int i, int length){
+        int b = src.get(i) & 0xFF;
+        switch (length) {
+            case 2:
+                return ((b & 0x1F) << 6) | (src.get(i + 1) & 0x3F);
+            case 3:
+                return ((b & 0x0F) << 12) | ((src.get(i + 1) & 0x3F) << 6) | (src.get(i + 2) & 0x3F);
+            case 4:
+                return ((b & 0x07) << 18) | ((src.get(i + 1) & 0x3F) << 12)
+                        | ((src.get(i + 2) & 0x3F) << 6) | (src.get(i + 3) & 0x3F);
+            default:
+                return b < 0x80 ? b : replacementChar;
+        }
+    }
+
+    /**
+     * Case folding equivalent to the one used by String.equalsIgnoreCase.
+     * @param codePoint Code point to be folded
+     * @return Folded code point
+     */
+    static int fold(int codePoint){
+        if (codePoint < 0x80) {
+            return asciiFold[codePoint];
+        }
+        return Character.toLowerCase(Character.toUpperCase(codePoint));
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.anonymizedService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catalog of the pattern rules a request can ask for, on top of its keyword, to anonymize structured data:
+ * "email" (e-mail addresses), "ipv4" (IPv4 addresses), "card" (card-like digit runs, 13 to 19 digits, or four groups of
+ * four digits separated by "-") and "id" (numeric identifiers of 5 digits or more, optionally preceded by "#").
+ * Rules match whole words, following the keyword's rules: trailing [,][.][!][?] are ignored and kept, and comparison is
+ * not case-sensitive.
+ * Every distinct set of rules is compiled once into a rule_Automaton and cached, so requests only pay a lookup.
+ */
+
+public class anonymize_Rules {
+    private static final String octet = "(25[0-5]|2[0-4][0-9]|1[0-9][0-9]|[1-9]?[0-9])";
+    private static final Map<String, String> patterns = new LinkedHashMap<>();
+    private static final ConcurrentHashMap<String, rule_Automaton> compiled = new ConcurrentHashMap<>();
+
+    static {
+        patterns.put("email", "[a-z0-9._%+-]+@[a-z0-9-]+(\\.[a-z0-9-]+)*\\.[a-z]{2,}");
+        patterns.put("ipv4", octet + "(\\." + octet + "){3}");
+        patterns.put("card", "[0-9]{13,19}|[0-9]{4}(-[0-9]{4}){3}");
+        patterns.put("id", "#?[0-9]{5,}");
+    }
+
+    private anonymize_Rules(){
+    }
+
+    /**
+     * @param name Name of a rule
+     * @return true if it is one of the rules of the catalog
+     */
+    public static boolean isRule(String name){
+        return patterns.containsKey(name);
+    }
+
+    /**
+     * Returns the automaton recognizing any of the given rules, compiling it on first use.
+     * @param names Names of rules of the catalog (see isRule)
+     * @return The automaton, or null if no rule was given
+     */
+    public static rule_Automaton forRules(Collection<String> names){
+        if (names.isEmpty()) {
+            return null;
+        }
+        // The catalog order makes the key independent of the order the rules were asked in
+        List<String> selected = new ArrayList<>();
+        for (String name : patterns.keySet()) {
+            if (names.contains(name)) {
+                selected.add(name);
+            }
+        }
+        return compiled.computeIfAbsent(String.join(",", selected), key -> {
+            List<String> rules = new ArrayList<>();
+            for (String name : selected) {
+                rules.add(patterns.get(name));
+            }
+            return rule_Automaton.compile(rules);
+        });
+    }
+}
@@ -1,5 +1,8 @@
 package org.example.anonymizedService;
 
+import org.example.monitoring.anonymize_Event;
+
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 public class anonymize_Service {
@@ -24,10 +27,14 @@ public class anonymize_Service {
     /**
      * Checks whether a given word is followed by one of scope's special characters.
      * Special characters considered: [,][.][!][?]
+     * Empty words (e.g. produced by consecutive spaces or blank lines) are never followed by a special character.
      * @param word Word to be checked
      * @return true if word is followed by a special character
      */
     private boolean lastCharChecker(String word){
+        if(word.isEmpty()){
+            return false;
+        }
         char lastChar =  word.charAt(word.length()-1);
         return lastChar == ',' || lastChar == '.' || lastChar == '!' || lastChar == '?';
     }
@@ -35,14 +42,17 @@ public class anonymize_Service {
     /**
      * Converts the entire statement in the final result, i.e., anonymizes all the words to be considered.
      * It is not case-sensitive, which means it considers network, netWOrk and Network to be the same word.
+     * Spaces are kept exactly as received, including consecutive and trailing ones.
      * @param phrase Statement to be considered
      * @param wordToBeAnonymized Word that is equal to the keyword chosen by the client
      * @return Final statement with all the anonymized occurrences of the keyword chosen
      */
     public String[] stringAnonymizer(String phrase, String wordToBeAnonymized){
+        anonymize_Event event = new anonymize_Event();
+        event.begin();
         String[] anonymized = new String[2];
         int counter = 0;
-        String[] phraseArray = phrase.split(" ");
+        String[] phraseArray = phrase.split(" ", -1);
         for(int i = 0; i < phraseArray.length; i++){
             if(lastCharEvaluator(phraseArray[i]).equalsIgnoreCase(wordToBeAnonymized)){
                 phraseArray[i] = wordAnonymizer(phraseArray[i]);
@@ -51,6 +61,12 @@ public class anonymize_Service {
         }
         anonymized[0] = String.join(" ",phraseArray);
         anonymized[1] = Integer.toString(counter);
+        event.end();
+        if(event.shouldCommit()){
+            event.phraseBytes = phrase.getBytes(StandardCharsets.UTF_8).length;
+            event.occurrences = counter;
+            event.commit();
+        }
 
         return anonymized;
     }
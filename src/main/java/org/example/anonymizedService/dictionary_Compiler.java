@@ -0,0 +1,170 @@
+package org.example.anonymizedService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Offline compiler of sensitive-term dictionaries, from a text file with one term per line into the file format mapped
+ * by the servers (see term_Dictionary).
+ * Terms are case-folded and deduplicated. Since words never contain spaces and their trailing special characters are
+ * ignored, terms are trimmed, stripped of their trailing special characters, and skipped if they contain a space.
+ * In order to correctly run the program, the terms file and the output file must be passed as command-line arguments.
+ */
+
+public class dictionary_Compiler {
+
+    private dictionary_Compiler(){
+    }
+
+    /**
+     * Compiles a terms file into a dictionary file.
+     * (1.) Reads, normalizes and folds every term, skipping empty, duplicated and unmatchable ones.
+     * (2.) Sizes the slot table to the next power of two that keeps it at most half full.
+     * (3.) Places every term in the first free slot from its hash, writing its bytes after the table.
+     * (4.) Writes the header, the slots and the terms to the output file.
+     * (5.) Maps the written file and verifies its whole table (see term_Dictionary.verify).
+     * @param termsPath Text file with one term per line (UTF-8)
+     * @param outputPath File where the dictionary is written (an existing file is truncated)
+     * @return Number of terms written
+     * @throws IOException If any of the files cannot be read or written, or the written dictionary is invalid
+     */
+    public static int compile(Path termsPath, Path outputPath) throws IOException {
+        // 1.
+        Set<String> seen = new HashSet<>();
+        List<byte[]> terms = new ArrayList<>();
+        long termBytes = 0;
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(termsPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                byte[] folded = fold(line.trim());
+                if (folded == null) {
+                    skipped++;
+                } else if (folded.length > 0 && seen.add(new String(folded, StandardCharsets.UTF_8))) {
+                    terms.add(folded);
+                    termBytes += 2 + folded.length;
+                }
+            }
+        }
+        // 2.
+        int slots = 2;
+        while (slots < terms.size() * 2L) {
+            if (slots >= 1 << 27) {
+                throw new IOException("Too many terms: " + terms.size());
+            }
+            slots <<= 1;
+        }
+        long size = term_Dictionary.headerLength + (long) slots * term_Dictionary.slotLength + termBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Dictionary would exceed 2 GB: " + size + " bytes");
+        }
+        ByteBuffer dictionary = ByteBuffer.allocate((int) size);
+        int termsOffset = term_Dictionary.headerLength + slots * term_Dictionary.slotLength;
+        // 3.
+        int mask = slots - 1;
+        int offset = 0;
+        for (byte[] term : terms) {
+            int hash = term_Dictionary.hash(term);
+            int slot = hash & mask;
+            while (dictionary.getInt(term_Dictionary.headerLength + slot * term_Dictionary.slotLength) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            dictionary.putInt(term_Dictionary.headerLength + slot * term_Dictionary.slotLength, hash);
+            dictionary.putInt(term_Dictionary.headerLength + slot * term_Dictionary.slotLength + 4, offset);
+            dictionary.putShort(termsOffset + offset, (short) term.length);
+            dictionary.position(termsOffset + offset + 2);
+            dictionary.put(term);
+            offset += 2 + term.length;
+        }
+        // 4.
+        dictionary.putInt(0, term_Dictionary.magic);
+        dictionary.putInt(4, term_Dictionary.version);
+        dictionary.putInt(8, terms.size());
+        dictionary.putInt(12, slots);
+        dictionary.putInt(16, termsOffset);
+        dictionary.clear();
+        try (FileChannel channel = FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (dictionary.hasRemaining()) {
+                channel.write(dictionary);
+            }
+        }
+        // 5.
+        term_Dictionary.open(outputPath).verify();
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " terms containing spaces or longer than "
+                    + term_Dictionary.maximumTermLength + " bytes");
+        }
+        return terms.size();
+    }
+
+    /**
+     * Folds a term into the bytes stored in the dictionary, encoding every code point folded as anonymize_Byte_Service
+     * folds keywords.
+     * @param term Trimmed term
+     * @return Case-folded UTF-8 bytes of the term without its trailing special characters (empty if nothing is left),
+     * or null if the term can never match a word
+     */
+    private static byte[] fold(String term){
+        if (term.indexOf(' ') >= 0) {
+            return null;
+        }
+        byte[] bytes = term.getBytes(StandardCharsets.UTF_8);
+        int end = bytes.length;
+        while (end > 0 && anonymize_Byte_Service.lastCharChecker(bytes[end - 1])) {
+            end--;
+        }
+        int[] codePoints = anonymize_Byte_Service.keywordCodePoints(ByteBuffer.wrap(bytes), 0, end);
+        int length = 0;
+        for (int codePoint : codePoints) {
+            length += term_Dictionary.utf8Length(codePoint);
+        }
+        if (length > term_Dictionary.maximumTermLength) {
+            return null;
+        }
+        byte[] folded = new byte[length];
+        int i = 0;
+        for (int codePoint : codePoints) {
+            int codePointLength = term_Dictionary.utf8Length(codePoint);
+            for (int j = 0; j < codePointLength; j++) {
+                folded[i++] = (byte) term_Dictionary.utf8Byte(codePoint, codePointLength, j);
+            }
+        }
+        return folded;
+    }
+
+    /**
+     * This method guides the flow of the whole compilation as follows:
+     * (1.) Verifies the user inserts the terms file and the output file.
+     * (2.) Compiles the dictionary and reports how many terms it holds.
+     * @param args Terms file and output file
+     */
+    public static void main(String[] args) {
+        // 1.
+        if (args.length != 2) {
+            System.err.println("Usage: dictionary_Compiler <terms.txt> <dictionary.bin>. Terminating!");
+            System.exit(1);
+        }
+        // 2.
+        long start = System.nanoTime();
+        try {
+            int terms = compile(Paths.get(args[0]), Paths.get(args[1]));
+            System.out.printf("Compiled %d terms into %s in %.1f s%n", terms, args[1],
+                    (System.nanoTime() - start) / 1e9);
+        } catch (IOException e) {
+            System.err.println("Could not compile the dictionary: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.anonymizedService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Spans of a phrase masked by anonymize_Byte_Service, sent back instead of the anonymized phrase when a client asks
+ * for the "diff" option (see request_Options): the client already has the phrase, so it only needs to know which
+ * bytes to mask.
+ * Encoded as "Spans: " followed by comma-separated "offset:length" pairs, in bytes of the UTF-8 encoded phrase and in
+ * ascending order, e.g. "Spans: 6:6,31:5". Every masked character becomes one "X", exactly as in the anonymized phrase,
+ * so a span holding a multi-byte character is shorter once masked.
+ * A server that understands options but not this one answers with the anonymized phrase itself, which the client keeps
+ * as it is.
+ */
+
+public class diff_Spans {
+    public static final String marker = "Spans: ";
+    private static final byte[] markerBytes = marker.getBytes(StandardCharsets.UTF_8);
+    private int[] spans = new int[32];
+    private int size;
+
+    /**
+     * Removes every span, so that the same instance can be reused for the next request.
+     */
+    public void clear(){
+        size = 0;
+    }
+
+    /**
+     * Adds a masked span, after the ones already added.
+     * @param offset Index of its first byte, relative to the start of the phrase
+     * @param length Number of bytes masked
+     */
+    void add(int offset, int length){
+        if (size + 2 > spans.length) {
+            int[] grown = new int[spans.length * 2];
+            System.arraycopy(spans, 0, grown, 0, size);
+            spans = grown;
+        }
+        spans[size++] = offset;
+        spans[size++] = length;
+    }
+
+    /**
+     * @return Number of spans
+     */
+    public int size(){
+        return size / 2;
+    }
+
+    /**
+     * @return Number of bytes of the encoded spans
+     */
+    public int encodedLength(){
+        int length = markerBytes.length + (size == 0 ? 0 : size / 2 - 1);
+        for (int i = 0; i < size; i += 2) {
+            length += digits(spans[i]) + 1 + digits(spans[i + 1]);
+        }
+        return length;
+    }
+
+    /**
+     * Encodes the spans into an array.
+     * @param destination Array with at least encodedLength bytes left after the position
+     * @param position Index where the encoded spans start
+     * @return Index right after the encoded spans
+     */
+    public int writeTo(byte[] destination, int position){
+        System.arraycopy(markerBytes, 0, destination, position, markerBytes.length);
+        position += markerBytes.length;
+        for (int i = 0; i < size; i += 2) {
+            if (i > 0) {
+                destination[position++] = ',';
+            }
+            position = writeNumber(spans[i], destination, position);
+            destination[position++] = ':';
+            position = writeNumber(spans[i + 1], destination, position);
+        }
+        return position;
+    }
+
+    /**
+     * Encodes the spans into a stream.
+     * @param out Stream where the encoded spans are written
+     * @throws IOException If the stream cannot be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(markerBytes);
+        for (int i = 0; i < size; i += 2) {
+            if (i > 0) {
+                out.write(',');
+            }
+            writeNumber(spans[i], out);
+            out.write(':');
+            writeNumber(spans[i + 1], out);
+        }
+    }
+
+    /**
+     * Masks a phrase locally with the spans sent by the server.
+     * @param phrase UTF-8 encoded phrase, as sent to the server
+     * @param encoded Encoded spans, starting with the marker
+     * @return The anonymized phrase, or null if the spans are malformed or do not fit the phrase
+     */
+    public static String apply(byte[] phrase, String encoded){
+        if (!encoded.startsWith(marker)) {
+            return null;
+        }
+        StringBuilder anonymized = new StringBuilder(phrase.length);
+        int copied = 0;
+        if (encoded.length() > marker.length()) {
+            for (String span : encoded.substring(marker.length()).split(",", -1)) {
+                int colon = span.indexOf(':');
+                int offset;
+                int length;
+                try {
+                    offset = Integer.parseInt(span.substring(0, Math.max(colon, 0)));
+                    length = Integer.parseInt(span.substring(colon + 1));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                if (offset < copied || length < 0 || offset + length > phrase.length || offset + length < offset) {
+                    return null;
+                }
+                anonymized.append(new String(phrase, copied, offset - copied, StandardCharsets.UTF_8));
+                int characters = new String(phrase, offset, length, StandardCharsets.UTF_8).length();
+                for (int i = 0; i < characters; i++) {
+                    anonymized.append('X');
+                }
+                copied = offset + length;
+            }
+        }
+        anonymized.append(new String(phrase, copied, phrase.length - copied, StandardCharsets.UTF_8));
+        return anonymized.toString();
+    }
+
+    /**
+     * @return Number of decimal digits of a non-negative number
+     */
+    private static int digits(int number){
+        int digits = 1;
+        while (number >= 10) {
+            number /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    private static int writeNumber(int number, byte[] destination, int position){
+        int end = position + digits(number);
+        for (int i = end - 1; i >= position; i--) {
+            destination[i] = (byte) ('0' + number % 10);
+            number /= 10;
+        }
+        return end;
+    }
+
+    private static void writeNumber(int number, OutputStream out) throws IOException {
+        int divisor = 1;
+        while (number / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.write('0' + number / divisor % 10);
+        }
+    }
+}
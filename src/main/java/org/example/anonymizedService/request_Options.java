@@ -0,0 +1,92 @@
+package org.example.anonymizedService;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Options a client can append to its keyword, separated by the same delimiter " -- " used between phrase and keyword,
+ * as a comma-separated list: e.g. "secret -- email,ipv4" anonymizes the word "secret", e-mail addresses and IPv4
+ * addresses (see anonymize_Rules for the available rules).
+ * The "diff" option asks for the masked spans of the phrase instead of the anonymized phrase (see diff_Spans).
+ * Options this server does not know are ignored, so that it still answers clients that send newer options. Servers
+ * that predate options do not understand the delimiter: they take the whole field as the keyword, which then matches
+ * nothing.
+ */
+
+public class request_Options {
+    private static final byte[] delimiterBytes = " -- ".getBytes(StandardCharsets.UTF_8);
+
+    private final int keywordEnd;
+    private final rule_Automaton rules;
+    private final boolean diff;
+
+    private request_Options(int keywordEnd, rule_Automaton rules, boolean diff){
+        this.keywordEnd = keywordEnd;
+        this.rules = rules;
+        this.diff = diff;
+    }
+
+    /**
+     * Splits the UTF-8 encoded keyword field stored between two positions of a buffer into the keyword itself and its
+     * options.
+     * @param source Buffer holding the keyword field
+     * @param from Index of the first byte of the keyword field
+     * @param to Index right after the last byte of the keyword field
+     * @return The options of the request
+     */
+    public static request_Options parse(ByteBuffer source, int from, int to){
+        int delimiter = -1;
+        for (int i = from; i + delimiterBytes.length <= to && delimiter == -1; i++) {
+            int j = 0;
+            while (j < delimiterBytes.length && source.get(i + j) == delimiterBytes[j]) {
+                j++;
+            }
+            if (j == delimiterBytes.length) {
+                delimiter = i;
+            }
+        }
+        if (delimiter == -1) {
+            return new request_Options(to, null, false);
+        }
+
+        byte[] options = new byte[to - delimiter - delimiterBytes.length];
+        for (int i = 0; i < options.length; i++) {
+            options[i] = source.get(delimiter + delimiterBytes.length + i);
+        }
+        Set<String> ruleNames = new HashSet<>();
+        boolean diff = false;
+        for (String option : new String(options, StandardCharsets.UTF_8).split(",")) {
+            String name = option.trim().toLowerCase(Locale.ROOT);
+            if (anonymize_Rules.isRule(name)) {
+                ruleNames.add(name);
+            } else if (name.equals("diff")) {
+                diff = true;
+            }
+        }
+        return new request_Options(delimiter, anonymize_Rules.forRules(ruleNames), diff);
+    }
+
+    /**
+     * @return Index right after the last byte of the keyword itself, in the parsed buffer
+     */
+    public int getKeywordEnd(){
+        return keywordEnd;
+    }
+
+    /**
+     * @return Automaton of the rules asked for, or null if none
+     */
+    public rule_Automaton getRules(){
+        return rules;
+    }
+
+    /**
+     * @return true if the client asked for the masked spans instead of the anonymized phrase
+     */
+    public boolean isDiff(){
+        return diff;
+    }
+}
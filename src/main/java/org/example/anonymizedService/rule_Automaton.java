@@ -0,0 +1,413 @@
+package org.example.anonymizedService;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deterministic finite automaton that recognizes whole words matching any of a set of rules (see anonymize_Rules).
+ * Rules are written with a small regular expression syntax: literals, escapes ("\."), character classes ("[a-z0-9]",
+ * "[^@]"), groups, alternation ("|") and repetitions ("*", "+", "?", "{n}", "{n,}", "{n,m}").
+ * All the rules are compiled once into a single automaton (Thompson construction followed by subset construction), so
+ * a word is checked against every rule in one linear pass over its bytes, one table lookup per byte, without any
+ * backtracking. Rules are ASCII-only and not case-sensitive: any non-ASCII byte leads to the dead state.
+ */
+
+public class rule_Automaton {
+    public static final int dead = 0;
+    public static final int start = 1;
+    private static final int alphabet = 128;
+    private static final int maximumStates = 4096;
+    private static final int maximumRepetitions = 64;
+
+    private final int[] transitions;
+    private final int[] accepting;
+
+    private rule_Automaton(int[] transitions, int[] accepting){
+        this.transitions = transitions;
+        this.accepting = accepting;
+    }
+
+    /**
+     * Moves the automaton by one byte.
+     * @param state Current state
+     * @param b Next byte of the word
+     * @return Next state, or dead if no rule can match anymore
+     */
+    public int step(int state, byte b){
+        return b < 0 ? dead : transitions[state * alphabet + b];
+    }
+
+    /**
+     * @param state State reached after the last byte of a word
+     * @return true if the word matches at least one rule
+     */
+    public boolean accepts(int state){
+        return accepting[state] != 0;
+    }
+
+    /**
+     * @return Number of states of the automaton, including the dead state
+     */
+    public int numberOfStates(){
+        return accepting.length;
+    }
+
+    /**
+     * Compiles a set of rules into a single automaton.
+     * (1.) Parses every rule and builds its nondeterministic automaton, all of them reachable from a common start.
+     * (2.) Turns it into a deterministic automaton, each state being the set of nondeterministic states it stands for.
+     * (3.) Makes upper-case letters behave as their lower-case counterparts.
+     * @param patterns Rules, at most 32
+     * @return The compiled automaton
+     * @throws IllegalArgumentException If a rule is malformed, or the automaton would be too large
+     */
+    public static rule_Automaton compile(List<String> patterns){
+        if (patterns.size() > 32) {
+            throw new IllegalArgumentException("Too many rules: " + patterns.size());
+        }
+        // 1.
+        List<nfa_State> nfa = new ArrayList<>();
+        nfa.add(new nfa_State());
+        for (int r = 0; r < patterns.size(); r++) {
+            pattern_Node rule = new pattern_Parser(patterns.get(r)).parse();
+            int ruleStart = newState(nfa);
+            nfa.get(0).epsilons.add(ruleStart);
+            int ruleEnd = build(nfa, rule, ruleStart);
+            nfa.get(ruleEnd).accept |= 1 << r;
+        }
+
+        // 2.
+        List<BitSet> states = new ArrayList<>();
+        Map<BitSet, Integer> index = new HashMap<>();
+        states.add(new BitSet());
+        index.put(states.get(dead), dead);
+        BitSet initial = new BitSet();
+        initial.set(0);
+        states.add(closure(nfa, initial));
+        index.putIfAbsent(states.get(start), start);
+        List<int[]> rows = new ArrayList<>();
+        for (int s = 0; s < states.size(); s++) {
+            int[] row = new int[alphabet];
+            BitSet current = states.get(s);
+            for (int c = 0; c < alphabet; c++) {
+                BitSet next = new BitSet();
+                for (int n = current.nextSetBit(0); n >= 0; n = current.nextSetBit(n + 1)) {
+                    nfa_State state = nfa.get(n);
+                    for (int e = 0; e < state.sets.size(); e++) {
+                        if (state.sets.get(e).get(c)) {
+                            next.set(state.targets.get(e));
+                        }
+                    }
+                }
+                next = closure(nfa, next);
+                Integer target = index.get(next);
+                if (target == null) {
+                    if (states.size() == maximumStates) {
+                        throw new IllegalArgumentException("Rules are too complex: more than " + maximumStates + " states");
+                    }
+                    target = states.size();
+                    states.add(next);
+                    index.put(next, target);
+                }
+                row[c] = target;
+            }
+            rows.add(row);
+        }
+
+        // 3.
+        int[] transitions = new int[states.size() * alphabet];
+        int[] accepting = new int[states.size()];
+        for (int s = 0; s < states.size(); s++) {
+            int[] row = rows.get(s);
+            for (int c = 'A'; c <= 'Z'; c++) {
+                row[c] = row[c + ('a' - 'A')];
+            }
+            System.arraycopy(row, 0, transitions, s * alphabet, alphabet);
+            BitSet members = states.get(s);
+            for (int n = members.nextSetBit(0); n >= 0; n = members.nextSetBit(n + 1)) {
+                accepting[s] |= nfa.get(n).accept;
+            }
+        }
+        return new rule_Automaton(transitions, accepting);
+    }
+
+    /**
+     * Builds the nondeterministic automaton of a rule (or part of it), starting at a given state.
+     * @param nfa States of the nondeterministic automaton
+     * @param node Rule, or part of it
+     * @param from State where it starts
+     * @return State where it ends
+     */
+    private static int build(List<nfa_State> nfa, pattern_Node node, int from){
+        switch (node.kind) {
+            case pattern_Node.byteSet: {
+                int end = newState(nfa);
+                nfa.get(from).sets.add(node.set);
+                nfa.get(from).targets.add(end);
+                return end;
+            }
+            case pattern_Node.concatenation: {
+                int current = from;
+                for (pattern_Node child : node.children) {
+                    current = build(nfa, child, current);
+                }
+                return current;
+            }
+            case pattern_Node.alternation: {
+                int end = newState(nfa);
+                for (pattern_Node child : node.children) {
+                    int branch = newState(nfa);
+                    nfa.get(from).epsilons.add(branch);
+                    nfa.get(build(nfa, child, branch)).epsilons.add(end);
+                }
+                return end;
+            }
+            default: {
+                pattern_Node child = node.children.get(0);
+                int current = from;
+                for (int i = 0; i < node.minimum; i++) {
+                    current = build(nfa, child, current);
+                }
+                if (node.maximum == -1) {
+                    int loop = newState(nfa);
+                    nfa.get(current).epsilons.add(loop);
+                    nfa.get(build(nfa, child, loop)).epsilons.add(loop);
+                    return loop;
+                }
+                for (int i = node.minimum; i < node.maximum; i++) {
+                    int end = newState(nfa);
+                    nfa.get(current).epsilons.add(end);
+                    nfa.get(build(nfa, child, current)).epsilons.add(end);
+                    current = end;
+                }
+                return current;
+            }
+        }
+    }
+
+    /**
+     * @return Index of a new state of the nondeterministic automaton
+     */
+    private static int newState(List<nfa_State> nfa){
+        nfa.add(new nfa_State());
+        return nfa.size() - 1;
+    }
+
+    /**
+     * Adds to a set of states every state reachable from them without consuming any byte.
+     * @param nfa States of the nondeterministic automaton
+     * @param states Set of states
+     * @return The same set, with every state reachable from it
+     */
+    private static BitSet closure(List<nfa_State> nfa, BitSet states){
+        int[] stack = new int[nfa.size()];
+        int top = 0;
+        for (int n = states.nextSetBit(0); n >= 0; n = states.nextSetBit(n + 1)) {
+            stack[top++] = n;
+        }
+        while (top > 0) {
+            for (int next : nfa.get(stack[--top]).epsilons) {
+                if (!states.get(next)) {
+                    states.set(next);
+                    stack[top++] = next;
+                }
+            }
+        }
+        return states;
+    }
+
+    /**
+     * State of the nondeterministic automaton: byte transitions (a set of bytes and the state it leads to) and empty
+     * transitions, plus the rules it accepts.
+     */
+    private static class nfa_State {
+        private final List<BitSet> sets = new ArrayList<>();
+        private final List<Integer> targets = new ArrayList<>();
+        private final List<Integer> epsilons = new ArrayList<>();
+        private int accept;
+    }
+
+    /**
+     * Node of a parsed rule: a set of bytes, a concatenation, an alternation or a repetition of its children.
+     */
+    private static class pattern_Node {
+        private static final int byteSet = 0;
+        private static final int concatenation = 1;
+        private static final int alternation = 2;
+        private static final int repetition = 3;
+
+        private final int kind;
+        private final BitSet set;
+        private final List<pattern_Node> children;
+        private final int minimum;
+        private final int maximum;
+
+        private pattern_Node(int kind, BitSet set, List<pattern_Node> children, int minimum, int maximum){
+            this.kind = kind;
+            this.set = set;
+            this.children = children;
+            this.minimum = minimum;
+            this.maximum = maximum;
+        }
+    }
+
+    /**
+     * Recursive descent parser of the rule syntax. Letters are stored in lower case, as matching is not case-sensitive.
+     */
+    private static class pattern_Parser {
+        private final String pattern;
+        private int position;
+
+        private pattern_Parser(String pattern){
+            this.pattern = pattern;
+        }
+
+        private pattern_Node parse(){
+            pattern_Node node = alternation();
+            if (position != pattern.length()) {
+                throw error("unexpected '" + pattern.charAt(position) + "'");
+            }
+            return node;
+        }
+
+        private pattern_Node alternation(){
+            List<pattern_Node> branches = new ArrayList<>();
+            branches.add(concatenation());
+            while (position < pattern.length() && pattern.charAt(position) == '|') {
+                position++;
+                branches.add(concatenation());
+            }
+            return branches.size() == 1 ? branches.get(0)
+                    : new pattern_Node(pattern_Node.alternation, null, branches, 0, 0);
+        }
+
+        private pattern_Node concatenation(){
+            List<pattern_Node> items = new ArrayList<>();
+            while (position < pattern.length() && pattern.charAt(position) != '|' && pattern.charAt(position) != ')') {
+                items.add(repetition());
+            }
+            return new pattern_Node(pattern_Node.concatenation, null, items, 0, 0);
+        }
+
+        private pattern_Node repetition(){
+            pattern_Node node = atom();
+            while (position < pattern.length()) {
+                char c = pattern.charAt(position);
+                int minimum;
+                int maximum;
+                if (c == '*' || c == '+' || c == '?') {
+                    position++;
+                    minimum = c == '+' ? 1 : 0;
+                    maximum = c == '?' ? 1 : -1;
+                } else if (c == '{') {
+                    position++;
+                    minimum = number();
+                    maximum = minimum;
+                    if (position < pattern.length() && pattern.charAt(position) == ',') {
+                        position++;
+                        maximum = position < pattern.length() && pattern.charAt(position) == '}' ? -1 : number();
+                    }
+                    expect('}');
+                    if ((maximum != -1 && maximum < minimum) || Math.max(minimum, maximum) > maximumRepetitions) {
+                        throw error("invalid repetition");
+                    }
+                } else {
+                    break;
+                }
+                List<pattern_Node> child = new ArrayList<>();
+                child.add(node);
+                node = new pattern_Node(pattern_Node.repetition, null, child, minimum, maximum);
+            }
+            return node;
+        }
+
+        private pattern_Node atom(){
+            char c = pattern.charAt(position++);
+            BitSet set = new BitSet(alphabet);
+            if (c == '(') {
+                pattern_Node node = alternation();
+                expect(')');
+                return node;
+            } else if (c == '[') {
+                characterClass(set);
+            } else if (c == '.') {
+                set.set(0x21, 0x7F);
+            } else if ("*+?{}|)]".indexOf(c) >= 0) {
+                throw error("unexpected '" + c + "'");
+            } else {
+                add(set, c == '\\' ? escaped() : c);
+            }
+            return new pattern_Node(pattern_Node.byteSet, set, null, 0, 0);
+        }
+
+        private void characterClass(BitSet set){
+            boolean negated = position < pattern.length() && pattern.charAt(position) == '^';
+            if (negated) {
+                position++;
+            }
+            while (position < pattern.length() && pattern.charAt(position) != ']') {
+                char first = pattern.charAt(position++);
+                if (first == '\\') {
+                    first = escaped();
+                }
+                char last = first;
+                if (position + 1 < pattern.length() && pattern.charAt(position) == '-' && pattern.charAt(position + 1) != ']') {
+                    position++;
+                    last = pattern.charAt(position++);
+                    if (last == '\\') {
+                        last = escaped();
+                    }
+                }
+                if (last < first) {
+                    throw error("invalid range");
+                }
+                for (char c = first; c <= last; c++) {
+                    add(set, c);
+                }
+            }
+            expect(']');
+            if (negated) {
+                set.flip(0x21, 0x7F);
+            }
+        }
+
+        private char escaped(){
+            if (position == pattern.length()) {
+                throw error("incomplete escape");
+            }
+            return pattern.charAt(position++);
+        }
+
+        private int number(){
+            int begin = position;
+            while (position < pattern.length() && Character.isDigit(pattern.charAt(position))) {
+                position++;
+            }
+            if (begin == position) {
+                throw error("number expected");
+            }
+            return Integer.parseInt(pattern.substring(begin, position));
+        }
+
+        private void expect(char c){
+            if (position == pattern.length() || pattern.charAt(position) != c) {
+                throw error("'" + c + "' expected");
+            }
+            position++;
+        }
+
+        private void add(BitSet set, char c){
+            if (c <= ' ' || c >= 0x7F) {
+                throw error("only printable ASCII characters are supported");
+            }
+            set.set(Character.toLowerCase(c));
+        }
+
+        private IllegalArgumentException error(String message){
+            return new IllegalArgumentException("Invalid rule \"" + pattern + "\" at " + position + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package org.example.anonymizedService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only dictionary of sensitive terms, compiled by dictionary_Compiler and memory-mapped by the servers, so that
+ * millions of terms are available in milliseconds and live off the Java heap.
+ * File layout (big-endian):
+ * Header:  magic "ANDC", version, number of terms, number of slots (a power of two), offset of the terms (4 bytes each),
+ *          padded to 32 bytes.
+ * Slots:   open-addressed table of (hash, offset of the term relative to the terms) pairs, 4 bytes each; a hash of 0
+ *          marks an empty slot. Collisions are resolved by linear probing and the table is at most half full.
+ * Terms:   for every term, its length (2 bytes) followed by its case-folded UTF-8 bytes.
+ * Terms are folded as keywords are (see anonymize_Byte_Service), so a lookup hashes and compares the folded bytes of a
+ * word while reading it from the request buffer, without decoding it into a String or allocating anything.
+ */
+
+public class term_Dictionary {
+    static final int magic = 0x414E4443;
+    static final int version = 1;
+    static final int headerLength = 32;
+    static final int slotLength = 8;
+    static final int maximumTermLength = 0xFFFF;
+    private static final int fnvOffset = 0x811C9DC5;
+    private static final int fnvPrime = 0x01000193;
+    private final MappedByteBuffer map;
+    private final int terms;
+    private final int mask;
+    private final int termsOffset;
+
+    private term_Dictionary(MappedByteBuffer map, int terms, int slots, int termsOffset){
+        this.map = map;
+        this.terms = terms;
+        this.mask = slots - 1;
+        this.termsOffset = termsOffset;
+    }
+
+    /**
+     * Maps a compiled dictionary file, checking only its header, so that opening it does not read the whole file.
+     * Lookups bound their probes and check every term they compare against the mapping, so a corrupted slot can only
+     * make a word miss; verify checks the whole table.
+     * @param file Dictionary written by dictionary_Compiler
+     * @return The mapped dictionary
+     * @throws IOException If the file cannot be read or is not a valid dictionary
+     */
+    public static term_Dictionary open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < headerLength || size > Integer.MAX_VALUE) {
+                throw new IOException("Invalid dictionary size: " + size + " bytes");
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int terms = map.getInt(8);
+            int slots = map.getInt(12);
+            int termsOffset = map.getInt(16);
+            if (map.getInt(0) != magic || map.getInt(4) != version) {
+                throw new IOException("Not a dictionary of version " + version + ": " + file);
+            }
+            if (slots <= 0 || Integer.bitCount(slots) != 1 || terms < 0 || terms > slots / 2
+                    || termsOffset != headerLength + (long) slots * slotLength || termsOffset > size) {
+                throw new IOException("Corrupted dictionary header: " + file);
+            }
+            return new term_Dictionary(map, terms, slots, termsOffset);
+        }
+    }
+
+    /**
+     * Checks every slot of the dictionary: the number of used slots must be the number of terms, and every term must
+     * lie within the mapping. This reads the whole table, so it is meant for dictionary_Compiler, not for servers.
+     * @throws IOException If a slot is inconsistent
+     */
+    public void verify() throws IOException {
+        int used = 0;
+        for (int slot = 0; slot <= mask; slot++) {
+            int position = headerLength + slot * slotLength;
+            if (map.getInt(position) == 0) {
+                continue;
+            }
+            if (++used > terms || termEnd(map.getInt(position + 4)) == -1) {
+                throw new IOException("Corrupted dictionary slot " + slot);
+            }
+        }
+        if (used != terms) {
+            throw new IOException("Corrupted dictionary: " + used + " slots used for " + terms + " terms");
+        }
+    }
+
+    /**
+     * Checks that a term lies within the mapping.
+     * @param offset Offset of the term, relative to the terms
+     * @return Position right after the last byte of the term, or (-1) if it does not lie within the mapping
+     */
+    private int termEnd(int offset){
+        long term = (long) termsOffset + offset;
+        if (offset < 0 || term + 2 > map.capacity()) {
+            return -1;
+        }
+        long end = term + 2 + (map.getShort((int) term) & 0xFFFF);
+        return end > map.capacity() ? -1 : (int) end;
+    }
+
+    /**
+     * Maps the dictionary given by the "anonymizer.dictionary" system property, if any.
+     * @return The mapped dictionary, or null if the property is not set or the file could not be mapped
+     */
+    public static term_Dictionary fromSystemProperty(){
+        String file = System.getProperty("anonymizer.dictionary");
+        if (file == null || file.isEmpty()) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            term_Dictionary dictionary = open(Paths.get(file));
+            System.out.printf("Mapped dictionary of %d terms from %s in %.1f ms%n", dictionary.size(), file,
+                    (System.nanoTime() - start) / 1e6);
+            return dictionary;
+        } catch (IOException e) {
+            System.err.println("Could not map dictionary, its terms will not be anonymized. Exception: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return Number of terms of the dictionary
+     */
+    public int size(){
+        return terms;
+    }
+
+    /**
+     * Looks a word up, ignoring its trailing special characters, as anonymize_Byte_Service compares words with the
+     * keyword. The word is read twice, both times folding each code point on the fly: once to hash its folded bytes
+     * and once to compare them with the candidate term whose hash matches. ASCII bytes skip decoding altogether.
+     * @param src Buffer holding the word
+     * @param start Index of the first byte of the word
+     * @param end Index right after the last byte of the word
+     * @return Number of characters (UTF-16 units) of the whole word if it is in the dictionary, (-1) otherwise
+     */
+    int matchedCharacters(ByteBuffer src, int start, int end){
+        int stripped = end;
+        while (stripped > start && anonymize_Byte_Service.lastCharChecker(src.get(stripped - 1))) {
+            stripped--;
+        }
+        if (stripped == start) {
+            return -1;
+        }
+        int hash = fnvOffset;
+        int foldedLength = 0;
+        int characters = 0;
+        int i = start;
+        while (i < stripped) {
+            int b = src.get(i);
+            if (b >= 0) {
+                hash = (hash ^ anonymize_Byte_Service.fold(b)) * fnvPrime;
+                foldedLength++;
+                characters++;
+                i++;
+                continue;
+            }
+            int length = anonymize_Byte_Service.sequenceLength(src, i, stripped);
+            int codePoint = anonymize_Byte_Service.codePointAt(src, i, length);
+            int folded = anonymize_Byte_Service.fold(codePoint);
+            int foldedBytes = utf8Length(folded);
+            for (int j = 0; j < foldedBytes; j++) {
+                hash = (hash ^ utf8Byte(folded, foldedBytes, j)) * fnvPrime;
+            }
+            foldedLength += foldedBytes;
+            characters += Character.charCount(codePoint);
+            i += length;
+        }
+        if (foldedLength > maximumTermLength) {
+            return -1;
+        }
+        hash = slotHash(hash);
+        int slot = hash & mask;
+        for (int probes = 0; probes <= mask; probes++, slot = (slot + 1) & mask) {
+            int position = headerLength + slot * slotLength;
+            int slotHash = map.getInt(position);
+            if (slotHash == 0) {
+                return -1;
+            }
+            if (slotHash == hash && equalsTerm(src, start, stripped, foldedLength, map.getInt(position + 4))) {
+                return characters + (end - stripped);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the folded bytes of a word with a term of the dictionary.
+     * @param src Buffer holding the word
+     * @param start Index of the first byte of the word
+     * @param stripped Index right after the last byte of the word, without its trailing special characters
+     * @param foldedLength Number of folded bytes of the word
+     * @param offset Offset of the term, relative to the terms
+     * @return true if both are equal, false if they differ or the term does not lie within the mapping
+     */
+    private boolean equalsTerm(ByteBuffer src, int start, int stripped, int foldedLength, int offset){
+        int term = termsOffset + offset;
+        if (termEnd(offset) == -1 || (map.getShort(term) & 0xFFFF) != foldedLength) {
+            return false;
+        }
+        int t = term + 2;
+        int i = start;
+        while (i < stripped) {
+            int b = src.get(i);
+            if (b >= 0) {
+                if (anonymize_Byte_Service.fold(b) != map.get(t++)) {
+                    return false;
+                }
+                i++;
+                continue;
+            }
+            int length = anonymize_Byte_Service.sequenceLength(src, i, stripped);
+            int folded = anonymize_Byte_Service.fold(anonymize_Byte_Service.codePointAt(src, i, length));
+            int foldedBytes = utf8Length(folded);
+            for (int j = 0; j < foldedBytes; j++) {
+                if ((byte) utf8Byte(folded, foldedBytes, j) != map.get(t++)) {
+                    return false;
+                }
+            }
+            i += length;
+        }
+        return true;
+    }
+
+    /**
+     * Hash of the folded UTF-8 bytes of a term, as stored in its slot.
+     * @param bytes Case-folded UTF-8 bytes of the term
+     * @return Hash of the term, never 0
+     */
+    static int hash(byte[] bytes){
+        int hash = fnvOffset;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * fnvPrime;
+        }
+        return slotHash(hash);
+    }
+
+    /**
+     * Mixes a FNV-1a hash, whose low bits alone index the table, and reserves 0 for empty slots.
+     */
+    private static int slotHash(int hash){
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * @param codePoint Code point to be encoded
+     * @return Number of bytes of its UTF-8 encoding
+     */
+    static int utf8Length(int codePoint){
+        return codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+    }
+
+    /**
+     * @param codePoint Code point to be encoded
+     * @param length Number of bytes of its UTF-8 encoding
+     * @param j Index of the requested byte
+     * @return The j-th byte of its UTF-8 encoding
+     */
+    static int utf8Byte(int codePoint, int length, int j){
+        if (j > 0) {
+            return 0x80 | ((codePoint >>> (6 * (length - 1 - j))) & 0x3F);
+        }
+        switch (length) {
+            case 2:
+                return 0xC0 | (codePoint >>> 6);
+            case 3:
+                return 0xE0 | (codePoint >>> 12);
+            case 4:
+                return 0xF0 | (codePoint >>> 18);
+            default:
+                return codePoint;
+        }
+    }
+}
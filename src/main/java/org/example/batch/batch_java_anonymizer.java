@@ -0,0 +1,282 @@
+package org.example.batch;
+import org.example.anonymizedService.anonymize_Byte_Service;
+import org.example.anonymizedService.request_Options;
+import org.example.anonymizedService.rule_Automaton;
+import org.example.anonymizedService.term_Dictionary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline batch anonymizer that processes a whole file locally, without going through the TCP or UDP servers.
+ * The input file is memory-mapped in regions that always end on a line boundary. Regions are anonymized in parallel,
+ * line by line, directly on their UTF-8 bytes (anonymize_Byte_Service, same rules as the anonymize_Service), and
+ * written back in their original order to the output file through direct buffers.
+ * Regions are up to 64 MB long, and shorter when there are many worker threads, so that the output buffers of the
+ * regions in flight stay within a quarter of the maximum heap size. The default limit of direct memory is the whole
+ * maximum heap size; keeping deliberately within a quarter of it leaves room for the other users of direct memory.
+ * In order to correctly run the program, the input file, the output file and the keyword must be passed as command-line
+ * arguments. Optionally, the number of worker threads can be passed as a fourth argument.
+ * As for the servers, the keyword may carry options, e.g. "secret -- email,ipv4" (see request_Options), and a
+ * dictionary of sensitive terms can be given with -Danonymizer.dictionary=&lt;file&gt; (see term_Dictionary).
+ */
+
+public class batch_java_anonymizer {
+    private static final int maximumRegionLength = 64 * 1024 * 1024;
+    private static final int minimumRegionLength = 1024 * 1024;
+    private final int threads;
+    private final int regionLength;
+    private final ArrayBlockingQueue<ByteBuffer> bufferPool;
+    private final term_Dictionary dictionary;
+
+    /**
+     * Creates a batch anonymizer that uses the given number of worker threads.
+     * At most two regions per worker are in flight at any time, which bounds the memory used for output buffers.
+     * @param threads Number of worker threads
+     */
+    public batch_java_anonymizer(int threads){
+        this(threads, null);
+    }
+
+    /**
+     * Creates a batch anonymizer that uses the given number of worker threads and also anonymizes every word found in
+     * a dictionary of sensitive terms. The mapped dictionary is shared by all the workers.
+     * @param threads Number of worker threads
+     * @param dictionary Dictionary of sensitive terms, or null
+     */
+    public batch_java_anonymizer(int threads, term_Dictionary dictionary){
+        this.threads = threads;
+        long directBudget = Runtime.getRuntime().maxMemory() / 4;
+        this.regionLength = (int) Math.max(minimumRegionLength,
+                Math.min(maximumRegionLength, directBudget / (threads * 2L)));
+        this.bufferPool = new ArrayBlockingQueue<>(threads * 2);
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Anonymizes every line of the input file and writes the result to the output file.
+     * (1.) Opens the input channel for reading and the output channel for writing (an existing output file is truncated).
+     * (2.) Splits the input in regions of about regionLength bytes, extending each one up to the next line break.
+     * (3.) Submits regions to the workers, keeping a bounded window of pending regions.
+     * (4.) Writes finished regions in their original order and adds up the occurrences found in each one.
+     * @param inputPath File to be anonymized
+     * @param outputPath File where the anonymized content is written
+     * @param keyword Word to be anonymized, optionally followed by " -- " and the rules to be applied
+     * @return Total number of anonymized words
+     * @throws IOException If any of the files cannot be read or written
+     * @throws InterruptedException If the calling thread is interrupted while waiting for a region
+     */
+    public long anonymizeFile(Path inputPath, Path outputPath, String keyword) throws IOException, InterruptedException {
+        ByteBuffer keywordField = ByteBuffer.wrap(keyword.getBytes(StandardCharsets.UTF_8));
+        request_Options options = request_Options.parse(keywordField, 0, keywordField.limit());
+        int[] keywordCodePoints = anonymize_Byte_Service.keywordCodePoints(keywordField, 0, options.getKeywordEnd());
+        rule_Automaton rules = options.getRules();
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        // 1.
+        try (FileChannel input = FileChannel.open(inputPath, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(outputPath, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+            long size = input.size();
+            long start = 0;
+            long occurrences = 0;
+            ArrayDeque<Future<region_Result>> pending = new ArrayDeque<>();
+
+            while (start < size || !pending.isEmpty()) {
+                // 2. and 3.
+                while (start < size && pending.size() < threads * 2) {
+                    long end = regionEnd(input, start, size);
+                    long regionStart = start;
+                    pending.add(workers.submit(() -> anonymizeRegion(input, regionStart, end, keywordCodePoints, rules)));
+                    start = end;
+                }
+                // 4.
+                region_Result result = pending.poll().get();
+                while (result.buffer.hasRemaining()) {
+                    output.write(result.buffer);
+                }
+                occurrences += result.occurrences;
+                result.buffer.clear();
+                bufferPool.offer(result.buffer);
+            }
+            return occurrences;
+
+        } catch (ExecutionException e) {
+            throw new IOException("Region anonymization failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Finds where the region starting at the given position should end: about regionLength bytes further, right after
+     * the next line break, or at the end of the file.
+     * @param input Input channel
+     * @param start Position where the region starts
+     * @param size Size of the input file
+     * @return Position (exclusive) where the region ends
+     * @throws IOException If the input cannot be read, or if a single line does not fit in one mapping
+     */
+    private long regionEnd(FileChannel input, long start, long size) throws IOException {
+        long end = start + regionLength;
+        if (end >= size) {
+            return size;
+        }
+        ByteBuffer probe = ByteBuffer.allocate(8192);
+        while (end < size) {
+            probe.clear();
+            int read = input.read(probe, end);
+            if (read <= 0) {
+                return size;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return end + i + 1;
+                }
+            }
+            end += read;
+            if (end - start > Integer.MAX_VALUE) {
+                throw new IOException("Line starting before position " + start + " is too long to be mapped");
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Anonymizes a single region of the input file. Runs on a worker thread.
+     * (1.) Maps the region in read-only mode and takes an output buffer from the pool.
+     * (2.) For every line, anonymizes its bytes straight from the mapping into the output buffer with the
+     * anonymize_Byte_Service, followed by the original line terminator ("\n" or "\r\n").
+     * Anonymized text is never longer than the original, so the output buffer never needs to grow.
+     * @param input Input channel
+     * @param start Position where the region starts
+     * @param end Position (exclusive) where the region ends
+     * @param keyword Case-folded code points of the keyword
+     * @param rules Automaton of the rules to be applied, or null
+     * @return The anonymized region, ready to be written, and the number of occurrences found in it
+     * @throws IOException If the region cannot be mapped
+     */
+    private region_Result anonymizeRegion(FileChannel input, long start, long end, int[] keyword, rule_Automaton rules)
+            throws IOException {
+        // 1.
+        int length = (int) (end - start);
+        MappedByteBuffer region = input.map(FileChannel.MapMode.READ_ONLY, start, length);
+        ByteBuffer out = takeBuffer(length);
+        anonymize_Byte_Service anonymizeService = new anonymize_Byte_Service(dictionary);
+        long occurrences = 0;
+
+        // 2.
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && region.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && region.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+
+            if (contentEnd > lineStart) {
+                region.limit(contentEnd).position(lineStart);
+                occurrences += anonymizeService.byteAnonymizer(region, out, keyword, rules);
+                region.limit(length);
+            }
+
+            int next = Math.min(lineEnd + 1, length);
+            for (int i = contentEnd; i < next; i++) {
+                out.put(region.get(i));
+            }
+            lineStart = next;
+        }
+
+        out.flip();
+        return new region_Result(out, occurrences);
+    }
+
+    /**
+     * Takes a direct buffer from the pool, or allocates a new one when the pool is empty or its buffer is too small.
+     * New buffers hold one region (or the given capacity, for a region extended by a long line), so the pool never
+     * holds more than two regions per worker.
+     * @param capacity Minimum capacity needed
+     * @return An empty direct buffer
+     */
+    private ByteBuffer takeBuffer(int capacity){
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocateDirect(Math.max(capacity, regionLength));
+        }
+        return buffer;
+    }
+
+    /**
+     * Anonymized content of a region, ready to be written, and the number of occurrences found in it.
+     */
+    private static class region_Result {
+        private final ByteBuffer buffer;
+        private final long occurrences;
+
+        private region_Result(ByteBuffer buffer, long occurrences){
+            this.buffer = buffer;
+            this.occurrences = occurrences;
+        }
+    }
+
+    /**
+     * This method guides the flow of the whole batch process as follows:
+     * (1.) Verifies the user inserts input file, output file and keyword (and optionally the number of threads).
+     * (2.) Anonymizes the input file and prints the total number of occurrences, the elapsed time and the throughput.
+     * @param args Input file, output file, keyword and, optionally, the number of worker threads
+     */
+    public static void main(String[] args) {
+        // 1.
+        if (args.length < 3 || args[2].isEmpty()) {
+            System.err.println("Usage: batch_java_anonymizer <input file> <output file> <keyword> [threads]. Terminating!");
+            System.exit(1);
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 3) {
+            try {
+                threads = Integer.parseInt(args[3]);
+            } catch (NumberFormatException e) {
+                threads = 0;
+            }
+            if (threads < 1) {
+                System.err.println("Invalid number of threads. Terminating!");
+                System.exit(1);
+            }
+        }
+
+        // 2.
+        Path inputPath = Paths.get(args[0]);
+        Path outputPath = Paths.get(args[1]);
+        try {
+            long begin = System.nanoTime();
+            long occurrences = new batch_java_anonymizer(threads, term_Dictionary.fromSystemProperty())
+                    .anonymizeFile(inputPath, outputPath, args[2]);
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            double megabytes = inputPath.toFile().length() / (1024.0 * 1024.0);
+            System.out.println("Occurrences anonymized: " + occurrences);
+            System.out.printf("Processed %.1f MB in %.3f s (%.1f MB/s)%n", megabytes, seconds, megabytes / seconds);
+        } catch (IOException e) {
+            System.err.println("Batch anonymization failed: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Batch anonymization interrupted. Terminating!");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package org.example.capture;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A single request recorded by a server in capture mode, and the binary format of the capture log.
+ * The log starts with a header ("ANCP", format version, capture start as epoch milliseconds) followed by two kinds of
+ * entries, appended as they happen:
+ * - Request entry: sequence number, time since the capture started, transport, phrase, keyword and the arrival time of
+ * every fragment (UDP only), relative to the start of the request.
+ * - Response entry: sequence number of the request and the time the server took to handle it.
+ * Numbers are written as variable-length integers (7 bits per byte), and texts as their length followed by their
+ * UTF-8 bytes, which keeps the log compact.
+ */
+
+public class capture_Record {
+    static final byte[] magic = {'A', 'N', 'C', 'P'};
+    static final int version = 1;
+    static final int requestEntry = 1;
+    static final int responseEntry = 2;
+    public static final byte tcp = 0;
+    public static final byte udp = 1;
+
+    private final long sequence;
+    private final long timestampNanos;
+    private final byte transport;
+    private final String phrase;
+    private final String keyword;
+    private final long[] fragmentOffsetsMicros;
+    private long durationNanos = -1;
+
+    private capture_Record(long sequence, long timestampNanos, byte transport, String phrase, String keyword,
+                           long[] fragmentOffsetsMicros){
+        this.sequence = sequence;
+        this.timestampNanos = timestampNanos;
+        this.transport = transport;
+        this.phrase = phrase;
+        this.keyword = keyword;
+        this.fragmentOffsetsMicros = fragmentOffsetsMicros;
+    }
+
+    public long getTimestampNanos(){
+        return timestampNanos;
+    }
+
+    public byte getTransport(){
+        return transport;
+    }
+
+    public String getPhrase(){
+        return phrase;
+    }
+
+    public String getKeyword(){
+        return keyword;
+    }
+
+    public long[] getFragmentOffsetsMicros(){
+        return fragmentOffsetsMicros;
+    }
+
+    /**
+     * @return Time the server took to handle the request in the original run, or (-1) if its response was not recorded
+     */
+    public long getDurationNanos(){
+        return durationNanos;
+    }
+
+    /**
+     * Reads every request of a capture log, joined with its response entry.
+     * A log cut in the middle of an entry (e.g. server killed while writing) is read up to its last complete entry.
+     * @param path Capture log
+     * @return The recorded requests, in arrival order
+     * @throws IOException If the file cannot be read or is not a capture log
+     */
+    public static List<capture_Record> readAll(Path path) throws IOException {
+        List<capture_Record> records = new ArrayList<>();
+        HashMap<Long, capture_Record> bySequence = new HashMap<>();
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 65536))) {
+            byte[] header = new byte[magic.length];
+            in.readFully(header);
+            for (int i = 0; i < magic.length; i++) {
+                if (header[i] != magic[i]) {
+                    throw new IOException("Not a capture log: " + path);
+                }
+            }
+            if (in.readUnsignedShort() != version) {
+                throw new IOException("Unsupported capture log version: " + path);
+            }
+            in.readLong();
+
+            while (true) {
+                int type = in.read();
+                if (type == -1) {
+                    break;
+                }
+                try {
+                    if (type == requestEntry) {
+                        long sequence = readVarLong(in);
+                        long timestamp = readVarLong(in);
+                        byte transport = in.readByte();
+                        String phrase = readText(in);
+                        String keyword = readText(in);
+                        long[] fragments = new long[(int) readVarLong(in)];
+                        for (int i = 0; i < fragments.length; i++) {
+                            fragments[i] = readVarLong(in);
+                        }
+                        capture_Record record = new capture_Record(sequence, timestamp, transport, phrase, keyword, fragments);
+                        records.add(record);
+                        bySequence.put(sequence, record);
+                    } else if (type == responseEntry) {
+                        long sequence = readVarLong(in);
+                        long duration = readVarLong(in);
+                        capture_Record record = bySequence.remove(sequence);
+                        if (record != null) {
+                            record.durationNanos = duration;
+                        }
+                    } else {
+                        throw new IOException("Corrupted capture log: " + path);
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Writes a non-negative number as a variable-length integer: 7 bits per byte, highest bit set on all bytes but
+     * the last one.
+     * @param out Buffer where the number is written
+     * @param value Number to be written
+     */
+    static void writeVarLong(ByteBuffer out, long value){
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Reads a number written by writeVarLong.
+     * @param in Stream where the number is read from
+     * @return The number read
+     * @throws IOException If the stream ends before the number does
+     */
+    static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 64);
+        return value;
+    }
+
+    /**
+     * Reads a text written as its length followed by its UTF-8 bytes.
+     * @param in Stream where the text is read from
+     * @return The text read
+     * @throws IOException If the stream ends before the text does
+     */
+    private static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readVarLong(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
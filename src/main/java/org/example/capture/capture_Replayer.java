@@ -0,0 +1,270 @@
+package org.example.capture;
+import org.example.tcp.client_java_tcp;
+import org.example.udp.client_java_udp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a capture log (recorded by a server started with -Danonymizer.capture=&lt;file&gt;) against a TCP or UDP
+ * server, and compares latency and throughput with the original run.
+ * Requests are sent at their original pace (1x), N times faster (Nx) or as fast as possible (max). When replaying at a
+ * given pace, latency is measured from the moment each request was due, so requests delayed by a saturated server or
+ * replayer are not hidden. In max mode, latency is measured from the moment each request is actually sent.
+ * Original latencies are the ones recorded by the server (from request arrival to end of response), so they do not
+ * include the network; replayed latencies are measured by the client.
+ * Over UDP, requests that arrived in fragments are sent in fragments again, each one held until its recorded offset
+ * from the start of the request (divided by the speed, or not held at all in max mode), so slow or bursty uploads are
+ * reproduced; requests recorded without fragments (fast path or TCP) go through the client's usual path.
+ * In order to correctly run the program, capture file, transport ("tcp" or "udp") and server ("host:port") must be
+ * passed as command-line arguments. Optionally, the speed ("1", "4", "max", ...) and the number of concurrent clients.
+ */
+
+public class capture_Replayer {
+    private final List<capture_Record> records;
+    private final boolean tcp;
+    private final String host;
+    private final int port;
+    private final double speed;
+    private final int threads;
+
+    /**
+     * Prepares a replay of the given requests.
+     * @param records Requests to be replayed, in arrival order
+     * @param tcp true to replay over TCP, false to replay over UDP (whatever the transport of the original request)
+     * @param host Server name or IP address
+     * @param port Port where the server is running
+     * @param speed Replay speed relative to the original run, or 0 to replay as fast as possible
+     * @param threads Number of concurrent clients
+     */
+    public capture_Replayer(List<capture_Record> records, boolean tcp, String host, int port, double speed, int threads){
+        this.records = records;
+        this.tcp = tcp;
+        this.host = host;
+        this.port = port;
+        this.speed = speed;
+        this.threads = threads;
+    }
+
+    /**
+     * Replays every request and prints the comparison report.
+     * (1.) Schedules every request at its original offset from the first request, divided by the speed.
+     * (2.) Sends it on one of the concurrent clients and measures its latency and outcome.
+     * (3.) Waits for every request to finish and prints the report.
+     * @throws InterruptedException If the replay is interrupted
+     */
+    public void replay() throws InterruptedException {
+        int total = records.size();
+        long[] latencies = new long[total];
+        boolean[] succeeded = new boolean[total];
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        long firstTimestamp = records.get(0).getTimestampNanos();
+        long replayStart = System.nanoTime();
+
+        for (int i = 0; i < total; i++) {
+            // 1.
+            capture_Record record = records.get(i);
+            long due = replayStart;
+            if (speed > 0) {
+                due += (long) ((record.getTimestampNanos() - firstTimestamp) / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            // 2.
+            int index = i;
+            long scheduled = due;
+            clients.execute(() -> {
+                long start = System.nanoTime();
+                succeeded[index] = send(record);
+                latencies[index] = System.nanoTime() - (speed > 0 ? scheduled : start);
+            });
+        }
+
+        // 3.
+        clients.shutdown();
+        clients.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        long replayNanos = System.nanoTime() - replayStart;
+        report(latencies, succeeded, replayNanos);
+    }
+
+    /**
+     * Sends a single recorded request to the server, replaying its fragment timings over UDP.
+     * @param record Request to be sent
+     * @return true if a valid response was received
+     */
+    private boolean send(capture_Record record){
+        try {
+            if (tcp) {
+                client_java_tcp client = new client_java_tcp(host, port, 5000);
+                return client.requestAnonymization(record.getPhrase(), record.getKeyword()) != null;
+            }
+            client_java_udp client = new client_java_udp(1000);
+            try {
+                long[] fragments = record.getFragmentOffsetsMicros();
+                if (fragments.length == 0) {
+                    return client.requestAnonymization(record.getPhrase(), record.getKeyword(),
+                            InetAddress.getByName(host), port) != null;
+                }
+                long[] offsets = null;
+                if (speed > 0) {
+                    offsets = new long[fragments.length];
+                    for (int i = 0; i < fragments.length; i++) {
+                        offsets[i] = (long) (TimeUnit.MICROSECONDS.toNanos(fragments[i]) / speed);
+                    }
+                }
+                return client.requestPaced(record.getPhrase(), record.getKeyword(), offsets,
+                        InetAddress.getByName(host), port) != null;
+            } finally {
+                client.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Prints the comparison between the original run and the replay: number of requests, duration, throughput and
+     * latency percentiles.
+     * @param latencies Replayed latency of every request
+     * @param succeeded Outcome of every request
+     * @param replayNanos Duration of the whole replay
+     */
+    private void report(long[] latencies, boolean[] succeeded, long replayNanos){
+        int total = records.size();
+        long[] original = new long[total];
+        int originalCount = 0;
+        for (capture_Record record : records) {
+            if (record.getDurationNanos() >= 0) {
+                original[originalCount++] = record.getDurationNanos();
+            }
+        }
+        long[] replayed = new long[total];
+        int failures = 0;
+        int replayedCount = 0;
+        for (int i = 0; i < total; i++) {
+            if (succeeded[i]) {
+                replayed[replayedCount++] = latencies[i];
+            } else {
+                failures++;
+            }
+        }
+        long originalNanos = records.get(total - 1).getTimestampNanos() - records.get(0).getTimestampNanos();
+
+        System.out.println("Replayed " + total + " requests over " + (tcp ? "TCP" : "UDP") + " at "
+                + (speed > 0 ? speed + "x" : "max speed") + " (" + failures + " failed)");
+        System.out.printf("%-22s %14s %14s%n", "", "original", "replay");
+        System.out.printf("%-22s %14.3f %14.3f%n", "duration (s)", originalNanos / 1e9, replayNanos / 1e9);
+        System.out.printf("%-22s %14.1f %14.1f%n", "throughput (req/s)", perSecond(total, originalNanos),
+                perSecond(replayedCount, replayNanos));
+        double[] percentiles = {0.5, 0.9, 0.99, 1.0};
+        String[] labels = {"latency p50 (ms)", "latency p90 (ms)", "latency p99 (ms)", "latency max (ms)"};
+        long[] originalSorted = Arrays.copyOf(original, originalCount);
+        long[] replayedSorted = Arrays.copyOf(replayed, replayedCount);
+        Arrays.sort(originalSorted);
+        Arrays.sort(replayedSorted);
+        for (int i = 0; i < percentiles.length; i++) {
+            System.out.printf("%-22s %14s %14s%n", labels[i], milliseconds(percentile(originalSorted, percentiles[i])),
+                    milliseconds(percentile(replayedSorted, percentiles[i])));
+        }
+    }
+
+    /**
+     * @return Nanoseconds formatted as milliseconds, or "-" for a missing value
+     */
+    private static String milliseconds(long nanos){
+        return nanos < 0 ? "-" : String.format("%.3f", nanos / 1e6);
+    }
+
+    /**
+     * @return Number of events per second, or 0 if the duration is 0
+     */
+    private static double perSecond(int count, long nanos){
+        return nanos > 0 ? count / (nanos / 1e9) : 0;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     * @param sorted Values, in ascending order
+     * @param percentile Percentile, between 0 and 1
+     * @return The percentile, or (-1) if there are no values
+     */
+    private static long percentile(long[] sorted, double percentile){
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    /**
+     * This method guides the flow of the whole replay as follows:
+     * (1.) Verifies the user inserts capture file, transport and server, and optionally speed and number of clients.
+     * (2.) Reads the capture log.
+     * (3.) Replays it and prints the comparison report.
+     * @param args Capture file, transport ("tcp" or "udp"), server ("host:port"), speed ("max" or a factor, 1 by
+     *             default) and number of concurrent clients (8 by default)
+     */
+    public static void main(String[] args) {
+        // 1.
+        if (args.length < 3 || !(args[1].equals("tcp") || args[1].equals("udp")) || args[2].lastIndexOf(':') <= 0) {
+            System.err.println("Usage: capture_Replayer <capture file> <tcp|udp> <host:port> [speed|max] [clients]. Terminating!");
+            System.exit(1);
+        }
+        String host = args[2].substring(0, args[2].lastIndexOf(':'));
+        int port = 0;
+        double speed = 1;
+        int threads = 8;
+        try {
+            port = Integer.parseInt(args[2].substring(args[2].lastIndexOf(':') + 1));
+            if (args.length > 3) {
+                speed = args[3].equals("max") ? 0 : Double.parseDouble(args[3]);
+            }
+            if (args.length > 4) {
+                threads = Integer.parseInt(args[4]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage() + ". Terminating!");
+            System.exit(1);
+        }
+        if (port < 1024 || port > 49151 || speed < 0 || threads < 1) {
+            System.err.println("Invalid port number, speed or number of clients. Terminating!");
+            System.exit(1);
+        }
+
+        // 2.
+        List<capture_Record> records = null;
+        try {
+            InetAddress.getByName(host);
+            records = capture_Record.readAll(Paths.get(args[0]));
+        } catch (UnknownHostException e) {
+            System.err.println("Host not found: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Could not read capture: " + e.getMessage());
+            System.exit(1);
+        }
+        if (records.isEmpty()) {
+            System.err.println("Capture is empty. Terminating!");
+            System.exit(1);
+        }
+
+        // 3.
+        try {
+            new capture_Replayer(records, args[1].equals("tcp"), host, port, speed, threads).replay();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Replay interrupted. Terminating!");
+            System.exit(1);
+        }
+    }
+}
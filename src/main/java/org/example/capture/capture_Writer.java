@@ -0,0 +1,248 @@
+package org.example.capture;
+import org.example.logging.async_Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the requests received by a server into a capture log (see capture_Record for the format), so that they can
+ * be replayed later with the capture_Replayer.
+ * Capture is opt-in: servers only record when started with -Danonymizer.capture=&lt;file&gt;. The file holds one single
+ * run of the server: an existing file is overwritten, as sequence numbers and timestamps start over with every run.
+ * Entries are encoded straight from the server's byte buffers into an in-memory batch. A full batch is handed to the
+ * background flush thread, which writes it to the file while entries go to a second batch; the flush thread also
+ * writes the batch every second and when the server stops. Recording a request therefore only waits on the disk when
+ * the disk cannot write a batch in the time the server takes to fill the other one.
+ */
+
+public class capture_Writer {
+    public static final String captureProperty = "anonymizer.capture";
+    private static final int batchLength = 64 * 1024;
+
+    private final FileChannel channel;
+    private ByteBuffer batch = ByteBuffer.allocate(batchLength);
+    private ByteBuffer spare = ByteBuffer.allocate(batchLength);
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService flusher;
+    private long nextSequence;
+    private boolean closing;
+
+    /**
+     * Opens the capture log, emptying it if it exists, and writes its header first.
+     * Starts the periodic flush and registers a shutdown hook that writes what is left.
+     * @param path Capture log
+     * @throws IOException If the file cannot be opened
+     */
+    public capture_Writer(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        batch.put(capture_Record.magic);
+        batch.putShort((short) capture_Record.version);
+        batch.putLong(System.currentTimeMillis());
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "capture-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, 1, 1, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Creates a capture writer if the server was started with -Danonymizer.capture=&lt;file&gt;.
+     * @return The capture writer, or null if capture is disabled or the file cannot be opened
+     */
+    public static capture_Writer fromSystemProperty(){
+        String path = System.getProperty(captureProperty);
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        try {
+            capture_Writer writer = new capture_Writer(Paths.get(path));
+            System.out.println("Capturing requests to (overwriting): " + path);
+            return writer;
+        } catch (IOException e) {
+            System.err.println("Could not open capture file. Exception: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records a request, as soon as it was received and before it is anonymized.
+     * @param transport Transport of the request (capture_Record.tcp or capture_Record.udp)
+     * @param requestNanos System.nanoTime() when the request started to arrive
+     * @param phrase UTF-8 encoded phrase, between position and limit (the buffer is not modified)
+     * @param keyword UTF-8 encoded keyword, between position and limit (the buffer is not modified)
+     * @param fragmentNanos System.nanoTime() of the arrival of every fragment of the request, or null if not fragmented
+     * @return Sequence number of the request, to be passed to captureResponse
+     */
+    public synchronized long captureRequest(byte transport, long requestNanos, ByteBuffer phrase, ByteBuffer keyword,
+                                            long[] fragmentNanos){
+        int fragments = fragmentNanos == null ? 0 : fragmentNanos.length;
+        int maximumLength = 1 + 10 + 10 + 1 + 5 + phrase.remaining() + 5 + keyword.remaining() + 5 + fragments * 10;
+        ByteBuffer out = reserve(maximumLength);
+
+        long sequence = nextSequence++;
+        out.put((byte) capture_Record.requestEntry);
+        capture_Record.writeVarLong(out, sequence);
+        capture_Record.writeVarLong(out, Math.max(0, requestNanos - startNanos));
+        out.put(transport);
+        capture_Record.writeVarLong(out, phrase.remaining());
+        out.put(phrase.duplicate());
+        capture_Record.writeVarLong(out, keyword.remaining());
+        out.put(keyword.duplicate());
+        capture_Record.writeVarLong(out, fragments);
+        for (int i = 0; i < fragments; i++) {
+            capture_Record.writeVarLong(out, Math.max(0, (fragmentNanos[i] - requestNanos) / 1000));
+        }
+        written(out);
+        return sequence;
+    }
+
+    /**
+     * Records the time the server took to handle a request, once its response was sent.
+     * @param sequence Sequence number returned by captureRequest
+     * @param durationNanos Time between the arrival of the request and the end of its response
+     */
+    public synchronized void captureResponse(long sequence, long durationNanos){
+        ByteBuffer out = reserve(21);
+        out.put((byte) capture_Record.responseEntry);
+        capture_Record.writeVarLong(out, sequence);
+        capture_Record.writeVarLong(out, Math.max(0, durationNanos));
+        written(out);
+    }
+
+    /**
+     * Makes room for an entry. Entries are written into the batch; when the batch does not have enough room it is
+     * handed to the flush thread first, and entries larger than the whole batch get a buffer of their own.
+     * @param maximumLength Maximum number of bytes of the entry
+     * @return Buffer where the entry should be written
+     */
+    private ByteBuffer reserve(int maximumLength){
+        if (batch.remaining() < maximumLength) {
+            handOff();
+        }
+        return maximumLength <= batch.remaining() ? batch : ByteBuffer.allocate(maximumLength);
+    }
+
+    /**
+     * Completes an entry: entries written into a buffer of their own are handed to the flush thread straight away,
+     * after the batch, which holds the entries recorded before them.
+     * @param out Buffer returned by reserve, holding the entry
+     */
+    private void written(ByteBuffer out){
+        if (out != batch) {
+            out.flip();
+            if (closing) {
+                write(out);
+            } else {
+                flusher.execute(() -> write(out));
+            }
+        }
+    }
+
+    /**
+     * Hands the batch to the flush thread, and continues in the spare batch. If the flush thread is still writing
+     * the spare batch, waits until it is done. Once the writer is closing, the batch is written straight away instead.
+     */
+    private void handOff(){
+        while (spare == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (closing) {
+            writeNow();
+            return;
+        }
+        ByteBuffer full = batch;
+        batch = spare;
+        spare = null;
+        flusher.execute(() -> writeBatch(full));
+    }
+
+    /**
+     * Hands the batch to the flush thread, if it holds any entry and the spare batch is free. Runs every second on
+     * the flush thread, whose previous writes are therefore complete; otherwise, the batch is written next time.
+     */
+    private synchronized void flush(){
+        if (batch.position() > 0 && spare != null && !closing) {
+            handOff();
+        }
+    }
+
+    /**
+     * Writes a full batch to the capture log, on the flush thread, and gives it back as the spare batch.
+     * @param full Batch to be written, between its start and its position
+     */
+    private void writeBatch(ByteBuffer full){
+        full.flip();
+        write(full);
+        full.clear();
+        synchronized (this) {
+            spare = full;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Writes the batch to the capture log on the calling thread, and empties it.
+     */
+    private void writeNow(){
+        batch.flip();
+        write(batch);
+        batch.clear();
+    }
+
+    /**
+     * Writes a whole buffer to the capture log. Failures are reported and the buffer discarded, so capture problems
+     * never stop the server.
+     * @param buffer Buffer to be written, between position and limit
+     */
+    private void write(ByteBuffer buffer){
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            async_Log.error("Capture write failed: " + e.getMessage());
+            buffer.position(buffer.limit());
+        }
+    }
+
+    /**
+     * Stops the periodic flush, waits for the batches handed to the flush thread, writes what is left and closes the
+     * capture log.
+     */
+    public void close(){
+        synchronized (this) {
+            closing = true;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (channel.isOpen()) {
+                writeNow();
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Capture close failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
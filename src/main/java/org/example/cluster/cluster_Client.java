@@ -0,0 +1,212 @@
+package org.example.cluster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client library that spreads anonymization requests over a cluster of servers of the same transport (TCP or UDP).
+ * Requests are routed with consistent hashing: the routing key is the whole request (phrase and keyword), so load is
+ * evenly spread, and adding or removing a server only moves that server's share of the requests.
+ * A request that fails on a node fails over to the next node of the ring. Nodes that fail several requests in a row
+ * are marked as down and skipped, until a background health check, which only probes the nodes marked as down, brings
+ * them back. Healthy nodes are never probed, so that probes take no time away from the servers' real clients.
+ * Subclasses implement the transport: how to send a request to a single node and how to probe it.
+ */
+
+public abstract class cluster_Client {
+    private static final int virtualNodes = 160;
+    private final List<cluster_Node> nodes;
+    private final hash_Ring ring;
+    private final ScheduledExecutorService healthCheck;
+    protected final int timeout;
+
+    /**
+     * Creates the client and starts the background health check.
+     * @param nodes Servers of the cluster
+     * @param timeout Timeout for every request and health check, in milliseconds
+     * @param healthCheckInterval Time between two health checks of the cluster, in milliseconds
+     */
+    protected cluster_Client(List<cluster_Node> nodes, int timeout, int healthCheckInterval){
+        this.nodes = new ArrayList<>(nodes);
+        this.ring = new hash_Ring(this.nodes, virtualNodes);
+        this.timeout = timeout;
+        this.healthCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-health-check");
+            thread.setDaemon(true);
+            return thread;
+        });
+        healthCheck.scheduleWithFixedDelay(this::checkHealth, healthCheckInterval, healthCheckInterval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends a request to a single node.
+     * @param node Node that should handle the request
+     * @param phrase Custom text to be anonymized
+     * @param keyword Keyword to be anonymized
+     * @return An array with the anonymized text, the number of occurrences and the repetition statement
+     * @throws IOException If the node did not answer, or its answer is invalid
+     */
+    protected abstract String[] send(cluster_Node node, String phrase, String keyword) throws IOException;
+
+    /**
+     * Checks whether a node is alive.
+     * @param node Node to be probed
+     * @return true if the node answered within the timeout
+     */
+    protected abstract boolean probe(cluster_Node node);
+
+    /**
+     * Anonymizes a phrase on the cluster.
+     * (1.) Lists the nodes in preference order for the request, according to the ring.
+     * (2.) Tries the healthy ones first, in that order, counting a failure for any node that fails.
+     * (3.) If every healthy node failed, tries the nodes marked as down as well, in case they recovered since the last
+     * health check.
+     * @param phrase Custom text to be anonymized
+     * @param keyword Keyword to be anonymized
+     * @return An array with the anonymized text, the number of occurrences, the repetition statement and the node that
+     * handled the request, or null if no node could handle it
+     */
+    public String[] anonymize(String phrase, String keyword){
+        // 1.
+        List<cluster_Node> preference = ring.route(phrase + " -- " + keyword);
+        // 2.
+        for (cluster_Node node : preference) {
+            if (node.isHealthy()) {
+                String[] result = tryNode(node, phrase, keyword);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        // 3.
+        for (cluster_Node node : preference) {
+            if (!node.isHealthy()) {
+                String[] result = tryNode(node, phrase, keyword);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends the request to a node, updating its health according to the outcome.
+     * @param node Node that should handle the request
+     * @param phrase Custom text to be anonymized
+     * @param keyword Keyword to be anonymized
+     * @return The node's result followed by the node itself, or null if the node failed
+     */
+    private String[] tryNode(cluster_Node node, String phrase, String keyword){
+        try {
+            String[] result = send(node, phrase, keyword);
+            if (result != null) {
+                node.markUp();
+                return new String[]{result[0], result[1], result[2], node.toString()};
+            }
+        } catch (IOException e) {
+            System.err.println("Node " + node + " failed: " + e.getMessage());
+        }
+        if (node.markFailed() == cluster_Node.failureThreshold) {
+            System.err.println("Node " + node + " is not responding");
+        }
+        return null;
+    }
+
+    /**
+     * Probes every node marked as down, marking it up again if it answers. Runs on the health check thread.
+     */
+    private void checkHealth(){
+        for (cluster_Node node : nodes) {
+            if (!node.isHealthy() && probe(node)) {
+                node.markUp();
+                System.err.println("Node " + node + " is back");
+            }
+        }
+    }
+
+    /**
+     * @return The nodes of the cluster, with their current health
+     */
+    public List<cluster_Node> getNodes(){
+        return new ArrayList<>(nodes);
+    }
+
+    /**
+     * Stops the background health check.
+     */
+    public void close(){
+        healthCheck.shutdownNow();
+    }
+
+    /**
+     * This method guides the flow of the whole cluster client as follows:
+     * (1.) Verifies the user inserts the transport (tcp or udp) and at least one node as "host:port".
+     * (2.) Prompts for the string and the keyword, as the single-server clients do.
+     * (3.) Sends the request to the cluster and prints the anonymized string, followed by "Socket Programming" as many
+     * times as the keyword was found, and the node that handled it.
+     * @param args Transport ("tcp" or "udp") followed by the nodes of the cluster, as "host:port"
+     */
+    public static void main(String[] args) {
+        // 1.
+        if (args.length < 2 || !(args[0].equals("tcp") || args[0].equals("udp"))) {
+            System.err.println("Usage: cluster_Client <tcp|udp> <host:port> [host:port ...]. Terminating!");
+            System.exit(1);
+        }
+        List<cluster_Node> nodes = new ArrayList<>();
+        try {
+            for (int i = 1; i < args.length; i++) {
+                cluster_Node node = cluster_Node.parse(args[i]);
+                if (node.getPort() < 1024 || node.getPort() > 49151) {
+                    System.err.println("Invalid port number. Terminating!");
+                    System.exit(1);
+                }
+                nodes.add(node);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ". Terminating!");
+            System.exit(1);
+        }
+
+        // 2.
+        String phrase = null;
+        String keyword = null;
+        try (BufferedReader stdin = new BufferedReader(new InputStreamReader(System.in))) {
+            System.out.print("Enter string: ");
+            phrase = stdin.readLine();
+            System.out.print("Enter keyword: ");
+            keyword = stdin.readLine();
+        } catch (IOException e) {
+            System.err.println("I/O error: " + e.getMessage());
+            System.exit(1);
+        }
+        if (phrase == null || keyword == null || phrase.isEmpty() || keyword.isEmpty()) {
+            System.err.println("Invalid input format. Terminating!");
+            System.exit(1);
+        }
+
+        // 3.
+        cluster_Client client = args[0].equals("tcp")
+                ? new cluster_client_tcp(nodes, 1000, 2000)
+                : new cluster_client_udp(nodes, 1000, 2000);
+        String[] result = client.anonymize(phrase, keyword);
+        client.close();
+        if (result == null) {
+            System.err.println("No node of the cluster could handle the request. Terminating!");
+            System.exit(1);
+        }
+        System.out.println(result[0]);
+        int repetitions = Integer.parseInt(result[1]);
+        for (int i = 0; i < repetitions; i++) {
+            System.out.println(result[2]);
+        }
+        System.out.println("Handled by " + result[3]);
+    }
+}
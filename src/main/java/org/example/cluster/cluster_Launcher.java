@@ -0,0 +1,122 @@
+package org.example.cluster;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Starts a local cluster: several anonymizer servers of the same transport, each one in its own process and on its own
+ * port, so that the cluster client can be tried and load-tested on a single machine.
+ * In order to correctly run the program, the transport ("tcp" or "udp"), the first port and the number of servers must
+ * be passed as command-line arguments. Servers use consecutive ports and are stopped when the launcher is.
+ * The launcher's -Danonymizer.* options (capture, rate limiting, dictionary, logging) are passed on to every server;
+ * since each server writes its own capture log, the port of the server is appended to the capture file name
+ * (e.g. capture.bin.20001).
+ */
+
+public class cluster_Launcher {
+
+    /**
+     * This method guides the flow of the whole launcher as follows:
+     * (1.) Verifies the user inserts the transport, a valid first port and a number of servers that fits the port range.
+     * (2.) Starts every server as a child process running on the same classpath and with the same anonymizer options,
+     * sharing this console.
+     * (3.) Prints the nodes to be passed to the cluster client and waits until every server exits. Stopping the
+     * launcher stops every server.
+     * @param args Transport ("tcp" or "udp"), first port and number of servers
+     */
+    public static void main(String[] args) {
+        // 1.
+        if (args.length < 3 || !(args[0].equals("tcp") || args[0].equals("udp"))) {
+            System.err.println("Usage: cluster_Launcher <tcp|udp> <first port> <servers>. Terminating!");
+            System.exit(1);
+        }
+        int firstPort = 0;
+        int servers = 0;
+        try {
+            firstPort = Integer.parseInt(args[1]);
+            servers = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid port number. Terminating!");
+            System.exit(1);
+        }
+        if (servers < 1 || firstPort < 1024 || firstPort + servers - 1 > 49151) {
+            System.err.println("Invalid port number. Terminating!");
+            System.exit(1);
+        }
+
+        // 2.
+        String serverClass = args[0].equals("tcp") ? "org.example.tcp.server_java_tcp" : "org.example.udp.server_java_udp";
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classpath = System.getProperty("java.class.path");
+        List<Process> processes = new ArrayList<>();
+        boolean[] stopping = new boolean[1];
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            synchronized (processes) {
+                stopping[0] = true;
+                processes.forEach(Process::destroy);
+            }
+        }));
+        StringBuilder nodes = new StringBuilder();
+        try {
+            for (int i = 0; i < servers; i++) {
+                int port = firstPort + i;
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(serverOptions(port));
+                command.add("-cp");
+                command.add(classpath);
+                command.add(serverClass);
+                command.add(Integer.toString(port));
+                synchronized (processes) {
+                    if (stopping[0]) {
+                        return;
+                    }
+                    processes.add(new ProcessBuilder(command).inheritIO().start());
+                }
+                nodes.append(" localhost:").append(port);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not start server: " + e.getMessage());
+            System.exit(1);
+        }
+
+        // 3.
+        System.out.println("Cluster nodes:" + nodes);
+        List<Process> started;
+        synchronized (processes) {
+            started = new ArrayList<>(processes);
+        }
+        for (Process process : started) {
+            try {
+                process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builds the -Danonymizer.* options of a server from the ones this launcher was started with.
+     * @param port Port of the server, appended to the capture file name
+     * @return Options to be passed to the server's JVM
+     */
+    private static List<String> serverOptions(int port){
+        List<String> options = new ArrayList<>();
+        Properties properties = System.getProperties();
+        for (String name : properties.stringPropertyNames()) {
+            if (!name.startsWith("anonymizer.")) {
+                continue;
+            }
+            String value = properties.getProperty(name);
+            if (name.equals("anonymizer.capture")) {
+                value = value + "." + port;
+            }
+            options.add("-D" + name + "=" + value);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.cluster;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single anonymizer server (TCP or UDP) that belongs to a cluster, identified by its host and port.
+ * Besides its address, it keeps track of its health: a node is considered down after failureThreshold consecutive
+ * failed requests, and up again once a request or health check succeeds. A single failure is not enough, as servers
+ * handle one client at a time and a busy node may simply be slow to answer.
+ */
+
+public class cluster_Node {
+    static final int failureThreshold = 3;
+    private final String host;
+    private final int port;
+    private volatile boolean healthy = true;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * Creates a node for the server running on the given host and port. Nodes start as healthy.
+     * @param host Server name or IP address
+     * @param port Port where the server is running
+     */
+    public cluster_Node(String host, int port){
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Parses a node written as "host:port".
+     * @param address Node address, in the "host:port" format
+     * @return The corresponding node
+     * @throws IllegalArgumentException If the address does not follow the format or the port is not a number
+     */
+    public static cluster_Node parse(String address){
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0 || separator == address.length() - 1) {
+            throw new IllegalArgumentException("Invalid node address: " + address);
+        }
+        try {
+            return new cluster_Node(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid node port: " + address);
+        }
+    }
+
+    public String getHost(){
+        return host;
+    }
+
+    public int getPort(){
+        return port;
+    }
+
+    public boolean isHealthy(){
+        return healthy;
+    }
+
+    /**
+     * Marks the node as up, after a successful request or health check.
+     */
+    void markUp(){
+        consecutiveFailures.set(0);
+        healthy = true;
+    }
+
+    /**
+     * Records a failed request, marking the node as down once it failed failureThreshold times in a row.
+     * @return Number of consecutive failures, including this one
+     */
+    int markFailed(){
+        int failures = consecutiveFailures.incrementAndGet();
+        if (failures >= failureThreshold) {
+            healthy = false;
+        }
+        return failures;
+    }
+
+    @Override
+    public String toString(){
+        return host + ":" + port;
+    }
+}
@@ -0,0 +1,55 @@
+package org.example.cluster;
+import org.example.tcp.client_java_tcp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * Cluster client for a pool of TCP servers (server_java_tcp).
+ * Every request opens its own connection, since a TCP server serves one connection at a time.
+ */
+
+public class cluster_client_tcp extends cluster_Client {
+
+    /**
+     * Creates the client and starts the background health check.
+     * @param nodes Servers of the cluster
+     * @param timeout Timeout for every request and health check, in milliseconds
+     * @param healthCheckInterval Time between two health checks of the cluster, in milliseconds
+     */
+    public cluster_client_tcp(List<cluster_Node> nodes, int timeout, int healthCheckInterval){
+        super(nodes, timeout, healthCheckInterval);
+    }
+
+    /**
+     * Connects to the node and sends the request with a client_java_tcp.
+     * @param node Node that should handle the request
+     * @param phrase Custom text to be anonymized
+     * @param keyword Keyword to be anonymized
+     * @return An array with the anonymized text, the number of occurrences and the repetition statement
+     * @throws IOException If the node did not answer, or its answer is invalid
+     */
+    @Override
+    protected String[] send(cluster_Node node, String phrase, String keyword) throws IOException {
+        client_java_tcp client = new client_java_tcp(node.getHost(), node.getPort(), timeout);
+        return client.requestAnonymization(phrase, keyword);
+    }
+
+    /**
+     * A TCP node is alive if it accepts a connection within the timeout. Only nodes marked as down are probed, so the
+     * connection rarely takes the server away from its real clients.
+     * @param node Node to be probed
+     * @return true if the connection was established
+     */
+    @Override
+    protected boolean probe(cluster_Node node){
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(node.getHost(), node.getPort()), timeout);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
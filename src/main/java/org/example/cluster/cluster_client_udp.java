@@ -0,0 +1,65 @@
+package org.example.cluster;
+import org.example.udp.client_java_udp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * Cluster client for a pool of UDP servers (server_java_udp).
+ * Every request uses its own client_java_udp (and DatagramSocket), so requests can run concurrently.
+ */
+
+public class cluster_client_udp extends cluster_Client {
+
+    /**
+     * Creates the client and starts the background health check.
+     * @param nodes Servers of the cluster
+     * @param timeout Timeout for every request and health check, in milliseconds
+     * @param healthCheckInterval Time between two health checks of the cluster, in milliseconds
+     */
+    public cluster_client_udp(List<cluster_Node> nodes, int timeout, int healthCheckInterval){
+        super(nodes, timeout, healthCheckInterval);
+    }
+
+    /**
+     * Sends the request to the node with a client_java_udp, asking for a compact response.
+     * @param node Node that should handle the request
+     * @param phrase Custom text to be anonymized
+     * @param keyword Keyword to be anonymized
+     * @return An array with the anonymized text, the number of occurrences and the repetition statement
+     * @throws IOException If the node's address cannot be resolved, or the node did not answer
+     */
+    @Override
+    protected String[] send(cluster_Node node, String phrase, String keyword) throws IOException {
+        client_java_udp client = new client_java_udp(timeout);
+        try {
+            String[] result = client.requestAnonymization(phrase, keyword, InetAddress.getByName(node.getHost()),
+                    node.getPort());
+            if (result == null) {
+                throw new IOException("No valid response");
+            }
+            return result;
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * A UDP node is alive if it acknowledges a "Ping" packet within the timeout. Servers acknowledge pings even while
+     * they are busy with another client.
+     * @param node Node to be probed
+     * @return true if the ping was acknowledged
+     */
+    @Override
+    protected boolean probe(cluster_Node node){
+        client_java_udp client = new client_java_udp(timeout);
+        try {
+            return client.ping(InetAddress.getByName(node.getHost()), node.getPort());
+        } catch (IOException e) {
+            return false;
+        } finally {
+            client.close();
+        }
+    }
+}
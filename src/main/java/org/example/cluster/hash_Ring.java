@@ -0,0 +1,112 @@
+package org.example.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent hashing ring used to spread requests over the nodes of a cluster.
+ * Every node is placed on the ring several times (virtual nodes), so that requests are evenly distributed and, when a
+ * node leaves, only its share of the requests moves to the remaining ones.
+ * The ring is immutable: points are kept in a sorted array and looked up with a binary search.
+ */
+
+public class hash_Ring {
+    private final long[] points;
+    private final cluster_Node[] owners;
+    private final int numberOfNodes;
+
+    /**
+     * Builds the ring, placing every node at the given number of points.
+     * @param nodes Nodes of the cluster
+     * @param virtualNodes Number of points of the ring for each node
+     */
+    public hash_Ring(List<cluster_Node> nodes, int virtualNodes){
+        int total = nodes.size() * virtualNodes;
+        long[] hashes = new long[total];
+        cluster_Node[] nodeOf = new cluster_Node[total];
+        int n = 0;
+        for (cluster_Node node : nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                hashes[n] = hash(node + "#" + i);
+                nodeOf[n] = node;
+                n++;
+            }
+        }
+
+        // Sort the points, keeping each one associated with its node
+        Integer[] order = new Integer[total];
+        for (int i = 0; i < total; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compareUnsigned(hashes[a], hashes[b]));
+        points = new long[total];
+        owners = new cluster_Node[total];
+        for (int i = 0; i < total; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = nodeOf[order[i]];
+        }
+        numberOfNodes = nodes.size();
+    }
+
+    /**
+     * Lists the distinct nodes responsible for a key, in preference order: the first node found walking the ring
+     * clockwise from the key's hash, followed by the next distinct ones, which are used for fail over.
+     * @param key Routing key of the request
+     * @return Every node of the ring, in preference order for the key
+     */
+    public List<cluster_Node> route(String key){
+        List<cluster_Node> preference = new ArrayList<>(numberOfNodes);
+        if (points.length == 0) {
+            return preference;
+        }
+        int start = ceiling(hash(key));
+        for (int i = 0; i < points.length && preference.size() < numberOfNodes; i++) {
+            cluster_Node node = owners[(start + i) % points.length];
+            if (!preference.contains(node)) {
+                preference.add(node);
+            }
+        }
+        return preference;
+    }
+
+    /**
+     * Finds the first point of the ring at or after the given hash, wrapping around to the first point.
+     * @param hash Hash of the key
+     * @return Index of the point in the sorted array
+     */
+    private int ceiling(long hash){
+        int low = 0;
+        int high = points.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[middle], hash) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low == points.length ? 0 : low;
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the UTF-8 bytes of a String, followed by a final mix so that similar keys
+     * (e.g. "host:1#1" and "host:1#2") land far apart on the ring.
+     * @param key String to be hashed
+     * @return Position of the key on the ring
+     */
+    static long hash(String key){
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
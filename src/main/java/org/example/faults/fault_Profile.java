@@ -0,0 +1,145 @@
+package org.example.faults;
+
+/**
+ * Network faults injected by the fault_Proxy, applied independently to every datagram in both directions.
+ * A profile is written as comma-separated settings, any of them optional, e.g. "loss=0.05,delay=20,jitter=10":
+ * loss       Probability of dropping a datagram (0 to 1).
+ * delay      Delay added to every datagram, in milliseconds.
+ * jitter     Maximum random variation of that delay, up or down, in milliseconds.
+ * duplicate  Probability of delivering a datagram twice, each copy with its own delay (0 to 1).
+ * reorder    Probability of holding a datagram back for "hold" extra milliseconds, so that the ones sent after it
+ *            overtake it (0 to 1).
+ * hold       Extra delay of reordered datagrams, in milliseconds (50 by default).
+ * seed       Seed of the random generator, so that a run can be repeated (42 by default).
+ * An empty profile ("none") forwards every datagram untouched.
+ */
+
+public class fault_Profile {
+    private double loss;
+    private double duplicate;
+    private double reorder;
+    private long delayMillis;
+    private long jitterMillis;
+    private long holdMillis = 50;
+    private long seed = 42;
+
+    private fault_Profile(){
+    }
+
+    /**
+     * Parses a profile.
+     * @param profile Comma-separated settings (see fault_Profile), or "none"
+     * @return The parsed profile
+     * @throws IllegalArgumentException If a setting is unknown or out of range
+     */
+    public static fault_Profile parse(String profile){
+        fault_Profile parsed = new fault_Profile();
+        if (profile.isEmpty() || profile.equals("none")) {
+            return parsed;
+        }
+        for (String setting : profile.split(",")) {
+            int equals = setting.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Invalid fault setting: " + setting);
+            }
+            String name = setting.substring(0, equals).trim();
+            String value = setting.substring(equals + 1).trim();
+            try {
+                switch (name) {
+                    case "loss":
+                        parsed.loss = probability(name, value);
+                        break;
+                    case "duplicate":
+                        parsed.duplicate = probability(name, value);
+                        break;
+                    case "reorder":
+                        parsed.reorder = probability(name, value);
+                        break;
+                    case "delay":
+                        parsed.delayMillis = milliseconds(name, value);
+                        break;
+                    case "jitter":
+                        parsed.jitterMillis = milliseconds(name, value);
+                        break;
+                    case "hold":
+                        parsed.holdMillis = milliseconds(name, value);
+                        break;
+                    case "seed":
+                        parsed.seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown fault setting: " + name);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+            }
+        }
+        return parsed;
+    }
+
+    private static double probability(String name, String value){
+        double probability = Double.parseDouble(value);
+        if (!(probability >= 0 && probability <= 1)) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1: " + value);
+        }
+        return probability;
+    }
+
+    private static long milliseconds(String name, String value){
+        long milliseconds = Long.parseLong(value);
+        if (milliseconds < 0) {
+            throw new IllegalArgumentException(name + " must not be negative: " + value);
+        }
+        return milliseconds;
+    }
+
+    public double getLoss(){
+        return loss;
+    }
+
+    public double getDuplicate(){
+        return duplicate;
+    }
+
+    public double getReorder(){
+        return reorder;
+    }
+
+    public long getDelayMillis(){
+        return delayMillis;
+    }
+
+    public long getJitterMillis(){
+        return jitterMillis;
+    }
+
+    public long getHoldMillis(){
+        return holdMillis;
+    }
+
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * @return The profile in the format accepted by parse, without the settings left at their default
+     */
+    @Override
+    public String toString(){
+        StringBuilder profile = new StringBuilder();
+        append(profile, "loss", loss, loss > 0);
+        append(profile, "delay", delayMillis, delayMillis > 0);
+        append(profile, "jitter", jitterMillis, jitterMillis > 0);
+        append(profile, "duplicate", duplicate, duplicate > 0);
+        append(profile, "reorder", reorder, reorder > 0);
+        append(profile, "hold", holdMillis, reorder > 0 && holdMillis != 50);
+        append(profile, "seed", seed, seed != 42);
+        return profile.length() == 0 ? "none" : profile.toString();
+    }
+
+    private static void append(StringBuilder profile, String name, Object value, boolean set){
+        if (set) {
+            profile.append(profile.length() == 0 ? "" : ",").append(name).append('=').append(value);
+        }
+    }
+}
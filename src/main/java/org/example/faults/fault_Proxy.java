@@ -0,0 +1,327 @@
+package org.example.faults;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local UDP proxy that sits between UDP clients and a UDP server and injects network faults (see fault_Profile) into
+ * the datagrams it forwards, in both directions, so that the reliability of the UDP protocol can be measured without a
+ * real bad network.
+ * Every client gets its own upstream socket towards the server, so the server sees one distinct address per client and
+ * its answers can be routed back. Delayed datagrams wait in a queue ordered by due time; the proxy runs on a single
+ * thread that waits for datagrams and due times at once.
+ * In order to correctly run the program, the proxy port and the server ("host:port") must be passed as command-line
+ * arguments. Optionally, the fault profile (e.g. "loss=0.05,delay=20,jitter=10").
+ */
+
+public class fault_Proxy implements Runnable {
+    private static final int maximumDatagram = 65507;
+    private final fault_Profile profile;
+    private final InetSocketAddress server;
+    private final Random random;
+    private final Selector selector;
+    private final DatagramChannel front;
+    private final Map<SocketAddress, DatagramChannel> upstreams = new HashMap<>();
+    private final PriorityQueue<delayed_Datagram> pending = new PriorityQueue<>();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(maximumDatagram);
+    private long sequence;
+    private volatile boolean running = true;
+    private volatile long received;
+    private volatile long forwarded;
+    private volatile long dropped;
+    private volatile long duplicated;
+    private volatile long reordered;
+
+    /**
+     * Binds the proxy to a port. Datagrams are only forwarded once run is called.
+     * @param port Port where clients send their datagrams, or 0 for any free port
+     * @param server Address of the UDP server
+     * @param profile Faults to be injected
+     * @throws IOException If the port cannot be bound
+     */
+    public fault_Proxy(int port, InetSocketAddress server, fault_Profile profile) throws IOException {
+        this.profile = profile;
+        this.server = server;
+        this.random = new Random(profile.getSeed());
+        this.selector = Selector.open();
+        this.front = DatagramChannel.open();
+        front.bind(new InetSocketAddress(port));
+        front.configureBlocking(false);
+        front.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * @return Port where clients send their datagrams
+     */
+    public int getPort(){
+        return front.socket().getLocalPort();
+    }
+
+    /**
+     * Forwards datagrams until the proxy is closed.
+     * (1.) Waits for a datagram from any side, or until the next delayed datagram is due (rounded up to the next
+     * millisecond, the selector's resolution).
+     * (2.) Reads every datagram available: those from a client go to its upstream socket (opened on its first
+     * datagram), those from the server go back to the client of the upstream socket that received them.
+     * Faults are applied to each of them.
+     * (3.) Sends every delayed datagram that is due.
+     */
+    @Override
+    public void run(){
+        try {
+            while (running) {
+                // 1.
+                delayed_Datagram next = pending.peek();
+                if (next == null) {
+                    selector.select();
+                } else {
+                    long nanos = next.due - System.nanoTime();
+                    if (nanos > 0) {
+                        // Rounded up: a wait shorter than 1 ms would otherwise become selectNow() and spin
+                        selector.select(Math.max(1, (nanos + 999_999) / 1_000_000));
+                    } else {
+                        selector.selectNow();
+                    }
+                }
+                // 2.
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        receiveAll(key);
+                    }
+                }
+                // 3.
+                long now = System.nanoTime();
+                while ((next = pending.peek()) != null && next.due - now <= 0) {
+                    pending.poll();
+                    send(next.channel, next.target, next.datagram);
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                System.err.println("Proxy stopped. Exception: " + e.getMessage());
+            }
+        } finally {
+            closeChannels();
+        }
+    }
+
+    /**
+     * Reads every datagram waiting on a channel and injects faults into each of them.
+     * @param key Key of the front channel or of an upstream channel (whose attachment is its client's address)
+     * @throws IOException If a new upstream socket cannot be opened
+     */
+    private void receiveAll(SelectionKey key) throws IOException {
+        DatagramChannel channel = (DatagramChannel) key.channel();
+        while (true) {
+            buffer.clear();
+            SocketAddress source;
+            try {
+                source = channel.receive(buffer);
+            } catch (IOException e) {
+                // e.g. the server is down and the upstream socket got an ICMP port unreachable
+                return;
+            }
+            if (source == null) {
+                return;
+            }
+            buffer.flip();
+            byte[] datagram = new byte[buffer.remaining()];
+            buffer.get(datagram);
+            if (channel == front) {
+                inject(upstream(source), server, datagram);
+            } else {
+                inject(front, (SocketAddress) key.attachment(), datagram);
+            }
+        }
+    }
+
+    /**
+     * @param client Address of a client
+     * @return The upstream socket of that client towards the server, opened on its first datagram
+     * @throws IOException If the socket cannot be opened
+     */
+    private DatagramChannel upstream(SocketAddress client) throws IOException {
+        DatagramChannel upstream = upstreams.get(client);
+        if (upstream == null) {
+            upstream = DatagramChannel.open();
+            upstream.connect(server);
+            upstream.configureBlocking(false);
+            upstream.register(selector, SelectionKey.OP_READ, client);
+            upstreams.put(client, upstream);
+        }
+        return upstream;
+    }
+
+    /**
+     * Applies the fault profile to one datagram: drops it, or sends or schedules one or two copies of it, each with
+     * its own delay.
+     * @param channel Channel the datagram leaves from
+     * @param target Address the datagram is sent to
+     * @param datagram Content of the datagram
+     */
+    private void inject(DatagramChannel channel, SocketAddress target, byte[] datagram){
+        received++;
+        if (random.nextDouble() < profile.getLoss()) {
+            dropped++;
+            return;
+        }
+        int copies = 1;
+        if (random.nextDouble() < profile.getDuplicate()) {
+            duplicated++;
+            copies = 2;
+        }
+        for (int i = 0; i < copies; i++) {
+            long delay = profile.getDelayMillis();
+            if (profile.getJitterMillis() > 0) {
+                delay += random.nextInt((int) (2 * profile.getJitterMillis() + 1)) - profile.getJitterMillis();
+            }
+            if (random.nextDouble() < profile.getReorder()) {
+                reordered++;
+                delay += profile.getHoldMillis();
+            }
+            if (delay <= 0 && pending.isEmpty()) {
+                send(channel, target, datagram);
+            } else {
+                long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delay));
+                pending.add(new delayed_Datagram(channel, target, datagram, due, sequence++));
+            }
+        }
+    }
+
+    private void send(DatagramChannel channel, SocketAddress target, byte[] datagram){
+        try {
+            channel.send(ByteBuffer.wrap(datagram), target);
+            forwarded++;
+        } catch (IOException e) {
+            dropped++;
+        }
+    }
+
+    /**
+     * Stops forwarding. Datagrams still delayed are discarded.
+     */
+    public void close(){
+        running = false;
+        selector.wakeup();
+    }
+
+    private void closeChannels(){
+        try {
+            for (DatagramChannel upstream : upstreams.values()) {
+                upstream.close();
+            }
+            front.close();
+            selector.close();
+        } catch (IOException e) {
+            System.err.println("Could not close the proxy. Exception: " + e.getMessage());
+        }
+    }
+
+    public long getReceived(){
+        return received;
+    }
+
+    public long getForwarded(){
+        return forwarded;
+    }
+
+    public long getDropped(){
+        return dropped;
+    }
+
+    public long getDuplicated(){
+        return duplicated;
+    }
+
+    public long getReordered(){
+        return reordered;
+    }
+
+    /**
+     * Datagram waiting for its due time. Datagrams due at the same time keep their arrival order.
+     */
+    private static class delayed_Datagram implements Comparable<delayed_Datagram> {
+        private final DatagramChannel channel;
+        private final SocketAddress target;
+        private final byte[] datagram;
+        private final long due;
+        private final long sequence;
+
+        private delayed_Datagram(DatagramChannel channel, SocketAddress target, byte[] datagram, long due, long sequence){
+            this.channel = channel;
+            this.target = target;
+            this.datagram = datagram;
+            this.due = due;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(delayed_Datagram other){
+            int order = Long.compare(due - other.due, 0);
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * This method guides the flow of the whole proxy as follows:
+     * (1.) Verifies the user inserts the proxy port and the server, and optionally the fault profile.
+     * (2.) Starts forwarding, and prints the number of datagrams received, dropped and delivered when stopped.
+     * @param args Proxy port, server ("host:port") and fault profile ("none" by default)
+     */
+    public static void main(String[] args) {
+        // 1.
+        if (args.length < 2 || args[1].lastIndexOf(':') <= 0) {
+            System.err.println("Usage: fault_Proxy <port> <server host:port> [profile]. Terminating!");
+            System.exit(1);
+        }
+        int port = 0;
+        InetSocketAddress server = null;
+        fault_Profile profile = null;
+        try {
+            port = Integer.parseInt(args[0]);
+            String host = args[1].substring(0, args[1].lastIndexOf(':'));
+            int serverPort = Integer.parseInt(args[1].substring(args[1].lastIndexOf(':') + 1));
+            server = new InetSocketAddress(InetAddress.getByName(host), serverPort);
+            profile = fault_Profile.parse(args.length > 2 ? args[2] : "none");
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid port number: " + e.getMessage() + ". Terminating!");
+            System.exit(1);
+        } catch (UnknownHostException e) {
+            System.err.println("Host not found: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ". Terminating!");
+            System.exit(1);
+        }
+
+        // 2.
+        try {
+            fault_Proxy proxy = new fault_Proxy(port, server, profile);
+            System.out.println("Proxy listening on port " + proxy.getPort() + ", forwarding to " + args[1]
+                    + " with faults: " + profile);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println("Received " + proxy.getReceived()
+                    + " datagrams: " + proxy.getDropped() + " dropped, " + proxy.getDuplicated() + " duplicated, "
+                    + proxy.getReordered() + " reordered, " + proxy.getForwarded() + " delivered")));
+            proxy.run();
+        } catch (IOException e) {
+            System.err.println("Proxy could not provide a port. Exception: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.example.faults;
+import org.example.anonymizedService.anonymize_Service;
+import org.example.udp.client_java_udp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scenario harness for the reliability of the UDP protocol: sends the same series of requests to a running UDP server
+ * through a fault_Proxy, once for every fault profile, and reports for each of them the completion rate, the goodput
+ * and the latency percentiles.
+ * A request is completed when the client gets a response, and correct when that response is exactly what the
+ * anonymize_Service computes locally; the server must therefore run without a dictionary. Goodput only counts the
+ * phrase bytes of correct responses. Phrases longer than a single datagram go through the fragmented path, whose
+ * packets are all acknowledged and retransmitted by sendReliablePacket.
+ * Before every scenario, the harness waits until the server answers a small request again, so that a server still
+ * retrying the previous scenario does not count against the next one (a ping is not enough: the server acknowledges
+ * pings while it is retrying).
+ * In order to correctly run the program, the server ("host:port") must be passed as a command-line argument.
+ * Optionally, the number of requests per scenario, the phrase length in bytes and the fault profiles to be run.
+ */
+
+public class fault_Scenarios {
+    private static final String[] defaultScenarios = {
+            "none", "loss=0.01", "loss=0.05", "delay=5,jitter=5", "duplicate=0.05", "reorder=0.05",
+            "loss=0.02,delay=5,jitter=5,duplicate=0.02,reorder=0.02"};
+    private static final String[] words = {"secret", "Secret,", "socket", "programming", "network", "datagram",
+            "packet", "SECRET!", "reliable", "anonymized"};
+    private static final String keyword = "secret";
+    private static final int timeout = 1000;
+    private final InetSocketAddress server;
+    private final List<String> phrases = new ArrayList<>();
+    private final List<String[]> expected = new ArrayList<>();
+
+    /**
+     * Prepares the series of requests sent in every scenario.
+     * @param server Address of the UDP server
+     * @param requests Number of requests per scenario
+     * @param phraseBytes Approximate length of each phrase, in bytes
+     */
+    public fault_Scenarios(InetSocketAddress server, int requests, int phraseBytes){
+        this.server = server;
+        Random random = new Random(42);
+        anonymize_Service anonymizeService = new anonymize_Service();
+        for (int i = 0; i < requests; i++) {
+            StringBuilder phrase = new StringBuilder(words[random.nextInt(words.length)]);
+            while (phrase.length() < phraseBytes) {
+                phrase.append(' ').append(words[random.nextInt(words.length)]);
+            }
+            phrases.add(phrase.toString());
+            expected.add(anonymizeService.stringAnonymizer(phrase.toString(), keyword));
+        }
+    }
+
+    /**
+     * Runs one scenario.
+     * (1.) Waits for the server to be idle, then starts a proxy with the fault profile on any free port.
+     * (2.) Sends every request through the proxy from one client, measuring its latency and checking its response.
+     * The clients of both steps are quiet: timeouts and failures are expected, and counted in the results.
+     * (3.) Stops the proxy and returns the results.
+     * @param profile Faults to be injected
+     * @return Results of the scenario
+     * @throws IOException If the proxy cannot be started
+     * @throws InterruptedException If the harness is interrupted
+     */
+    public scenario_Result run(fault_Profile profile) throws IOException, InterruptedException {
+        // 1.
+        if (!awaitIdleServer()) {
+            System.err.println("Server is not answering requests; results may be affected.");
+        }
+        fault_Proxy proxy = new fault_Proxy(0, server, profile);
+        Thread proxyThread = new Thread(proxy, "fault-proxy");
+        proxyThread.start();
+
+        // 2.
+        scenario_Result result = new scenario_Result(profile, phrases.size());
+        client_java_udp client = new client_java_udp(timeout);
+        client.setQuiet(true);
+        long begin = System.nanoTime();
+        try {
+            for (int i = 0; i < phrases.size(); i++) {
+                long start = System.nanoTime();
+                String[] response = client.requestAnonymization(phrases.get(i), keyword,
+                        InetAddress.getLoopbackAddress(), proxy.getPort());
+                long latency = System.nanoTime() - start;
+                if (response != null) {
+                    boolean correct = response[0].equals(expected.get(i)[0]) && response[1].equals(expected.get(i)[1]);
+                    result.add(latency, correct, correct ? phrases.get(i).length() : 0);
+                }
+            }
+        } finally {
+            result.elapsedNanos = System.nanoTime() - begin;
+            client.close();
+        }
+
+        // 3.
+        proxy.close();
+        proxyThread.join();
+        result.datagrams = proxy.getReceived();
+        result.dropped = proxy.getDropped();
+        return result;
+    }
+
+    /**
+     * Sends a small request to the server directly, without faults, until it is answered (at most 10 times).
+     * @return true if the server answered
+     */
+    private boolean awaitIdleServer(){
+        client_java_udp client = new client_java_udp(timeout);
+        client.setQuiet(true);
+        try {
+            for (int attempt = 0; attempt < 10; attempt++) {
+                if (client.requestAnonymization(keyword, keyword, server.getAddress(), server.getPort()) != null) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * Results of one scenario.
+     */
+    public static class scenario_Result {
+        private final fault_Profile profile;
+        private final int requests;
+        private final long[] latencies;
+        private int completed;
+        private int correct;
+        private long goodBytes;
+        private long elapsedNanos;
+        private long datagrams;
+        private long dropped;
+
+        private scenario_Result(fault_Profile profile, int requests){
+            this.profile = profile;
+            this.requests = requests;
+            this.latencies = new long[requests];
+        }
+
+        private void add(long latency, boolean correct, int bytes){
+            latencies[completed++] = latency;
+            if (correct) {
+                this.correct++;
+            }
+            goodBytes += bytes;
+        }
+
+        /**
+         * Nearest-rank percentile of the latencies of the completed requests.
+         * @return The percentile, or (-1) if no request was completed
+         */
+        private long percentile(double percentile){
+            if (completed == 0) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(latencies, completed);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile * completed);
+            return sorted[Math.max(0, rank - 1)];
+        }
+
+        private void print(){
+            System.out.printf("%-40s %9.1f %9.1f %10.2f %9s %9s %9s %9s %10s%n", profile,
+                    100.0 * completed / requests, 100.0 * correct / requests,
+                    elapsedNanos > 0 ? goodBytes / 1024.0 / (elapsedNanos / 1e9) : 0,
+                    milliseconds(percentile(0.5)), milliseconds(percentile(0.9)), milliseconds(percentile(0.99)),
+                    milliseconds(percentile(1.0)), dropped + "/" + datagrams);
+        }
+
+        private static void printHeader(){
+            System.out.printf("%-40s %9s %9s %10s %9s %9s %9s %9s %10s%n", "faults", "done (%)", "correct",
+                    "good KB/s", "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)", "dropped");
+        }
+
+        /**
+         * @return Nanoseconds formatted as milliseconds, or "-" for a missing value
+         */
+        private static String milliseconds(long nanos){
+            return nanos < 0 ? "-" : String.format("%.1f", nanos / 1e6);
+        }
+    }
+
+    /**
+     * This method guides the flow of the whole benchmark as follows:
+     * (1.) Verifies the user inserts the server, and optionally the number of requests, phrase length and profiles.
+     * (2.) Runs every scenario and prints one line of results for each of them.
+     * @param args Server ("host:port"), number of requests per scenario (20 by default), phrase length in bytes (600
+     *             by default) and fault profiles (a set covering loss, delay, duplication and reordering by default)
+     */
+    public static void main(String[] args) {
+        // 1.
+        if (args.length < 1 || args[0].lastIndexOf(':') <= 0) {
+            System.err.println("Usage: fault_Scenarios <server host:port> [requests] [phrase bytes] [profile ...]. Terminating!");
+            System.exit(1);
+        }
+        InetSocketAddress server = null;
+        int requests = 20;
+        int phraseBytes = 600;
+        List<fault_Profile> profiles = new ArrayList<>();
+        try {
+            String host = args[0].substring(0, args[0].lastIndexOf(':'));
+            int port = Integer.parseInt(args[0].substring(args[0].lastIndexOf(':') + 1));
+            server = new InetSocketAddress(InetAddress.getByName(host), port);
+            if (args.length > 1) {
+                requests = Integer.parseInt(args[1]);
+            }
+            if (args.length > 2) {
+                phraseBytes = Integer.parseInt(args[2]);
+            }
+            String[] scenarios = args.length > 3 ? Arrays.copyOfRange(args, 3, args.length) : defaultScenarios;
+            for (String scenario : scenarios) {
+                profiles.add(fault_Profile.parse(scenario));
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid number: " + e.getMessage() + ". Terminating!");
+            System.exit(1);
+        } catch (UnknownHostException e) {
+            System.err.println("Host not found: " + e.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + ". Terminating!");
+            System.exit(1);
+        }
+        if (requests < 1 || phraseBytes < 1) {
+            System.err.println("Invalid number of requests or phrase length. Terminating!");
+            System.exit(1);
+        }
+
+        // 2.
+        fault_Scenarios harness = new fault_Scenarios(server, requests, phraseBytes);
+        System.out.println(requests + " requests of about " + phraseBytes + " bytes per scenario, against "
+                + args[0]);
+        scenario_Result.printHeader();
+        try {
+            for (fault_Profile profile : profiles) {
+                harness.run(profile).print();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not start the proxy. Exception: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Scenarios interrupted. Terminating!");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.example.limiter;
+import org.example.logging.async_Log;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-client rate limiter, so that a single noisy client cannot monopolize a server.
+ * Every client address gets a token bucket for requests and one for bytes, refilled at the configured rates and
+ * holding at most a burst of traffic. Buckets are kept in a ConcurrentHashMap: looking a bucket up never takes a
+ * global lock, and updating it only locks that client's bucket, so clients never wait on each other.
+ * Buckets that were idle long enough to be full again are expired by a background sweep, so the map only holds the
+ * clients seen recently.
+ * Rate limiting is opt-in: servers only limit when started with -Danonymizer.rateLimit.requests=&lt;requests/s&gt;
+ * and/or -Danonymizer.rateLimit.bytes=&lt;bytes/s&gt;. Optionally, -Danonymizer.rateLimit.burst=&lt;seconds&gt; sets
+ * how many seconds of traffic a bucket holds (1 by default).
+ */
+
+public class rate_Limiter {
+    public static final String requestsProperty = "anonymizer.rateLimit.requests";
+    public static final String bytesProperty = "anonymizer.rateLimit.bytes";
+    public static final String burstProperty = "anonymizer.rateLimit.burst";
+    private static final long minimumIdleNanos = TimeUnit.SECONDS.toNanos(60);
+
+    private final double requestsPerNano;
+    private final double bytesPerNano;
+    private final double requestCapacity;
+    private final double byteCapacity;
+    private final long idleNanos;
+    private final ConcurrentHashMap<InetAddress, client_Bucket> buckets = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Creates the limiter and starts the background sweep of idle buckets.
+     * @param requestsPerSecond Requests allowed per second and client, or 0 for no request limit
+     * @param bytesPerSecond Bytes allowed per second and client, or 0 for no byte limit
+     * @param burstSeconds Seconds of traffic a full bucket holds
+     */
+    public rate_Limiter(double requestsPerSecond, double bytesPerSecond, double burstSeconds){
+        this.requestsPerNano = requestsPerSecond / 1e9;
+        this.bytesPerNano = bytesPerSecond / 1e9;
+        this.requestCapacity = Math.max(1, requestsPerSecond * burstSeconds);
+        this.byteCapacity = Math.max(1, bytesPerSecond * burstSeconds);
+        this.idleNanos = Math.max(minimumIdleNanos, (long) (burstSeconds * 1e9));
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = TimeUnit.NANOSECONDS.toMillis(idleNanos);
+        sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a rate limiter if the server was started with -Danonymizer.rateLimit.requests or
+     * -Danonymizer.rateLimit.bytes.
+     * @return The rate limiter, or null if rate limiting is disabled or its configuration is invalid
+     */
+    public static rate_Limiter fromSystemProperty(){
+        String requests = System.getProperty(requestsProperty);
+        String bytes = System.getProperty(bytesProperty);
+        if ((requests == null || requests.isEmpty()) && (bytes == null || bytes.isEmpty())) {
+            return null;
+        }
+        try {
+            double requestsPerSecond = requests == null || requests.isEmpty() ? 0 : Double.parseDouble(requests);
+            double bytesPerSecond = bytes == null || bytes.isEmpty() ? 0 : Double.parseDouble(bytes);
+            double burstSeconds = Double.parseDouble(System.getProperty(burstProperty, "1"));
+            if (requestsPerSecond < 0 || bytesPerSecond < 0 || burstSeconds <= 0) {
+                throw new NumberFormatException("negative rate or burst");
+            }
+            System.out.println("Rate limiting clients to " + (requestsPerSecond > 0 ? requestsPerSecond : "unlimited")
+                    + " requests/s and " + (bytesPerSecond > 0 ? bytesPerSecond : "unlimited") + " bytes/s");
+            return new rate_Limiter(requestsPerSecond, bytesPerSecond, burstSeconds);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid rate limit configuration: " + e.getMessage() + ". Rate limiting disabled");
+            return null;
+        }
+    }
+
+    /**
+     * Takes tokens from a client's buckets, if it has enough of them. Rejected traffic does not take any token, so a
+     * client that keeps retrying is admitted again as soon as its buckets refill.
+     * @param client Address of the client
+     * @param requests Number of requests to be admitted (0 for a follow-up message of an admitted request)
+     * @param bytes Number of bytes to be admitted
+     * @return true if the traffic is admitted, false if it exceeds the client's limits and should be rejected
+     */
+    public boolean tryAcquire(InetAddress client, int requests, long bytes){
+        long now = System.nanoTime();
+        client_Bucket bucket = buckets.computeIfAbsent(client, address -> new client_Bucket(this, now));
+        if (bucket.tryAcquire(this, now, requests, bytes)) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Removes the buckets of clients that were idle long enough to be full again, and reports the traffic rejected
+     * since the last sweep. Runs on the sweep thread.
+     * A client racing with the sweep may still take tokens from a removed (full) bucket; its next request simply
+     * starts a new full bucket, so no client is ever limited more than configured.
+     */
+    private void sweep(){
+        long now = System.nanoTime();
+        buckets.values().removeIf(bucket -> bucket.isIdle(now, idleNanos));
+        long count = rejected.sumThenReset();
+        if (count > 0) {
+            async_Log.error("Rate limit rejected " + count + " requests or messages; " + buckets.size()
+                    + " clients tracked");
+        }
+    }
+
+    /**
+     * Stops the background sweep.
+     */
+    public void close(){
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Token buckets of a single client: one for requests and one for bytes, refilled lazily on every use.
+     * Both are checked and taken under the bucket's own lock, so a message is either admitted by both or by none.
+     */
+    private static class client_Bucket {
+        private double requestTokens;
+        private double byteTokens;
+        private long lastRefillNanos;
+
+        private client_Bucket(rate_Limiter limiter, long now){
+            this.requestTokens = limiter.requestCapacity;
+            this.byteTokens = limiter.byteCapacity;
+            this.lastRefillNanos = now;
+        }
+
+        /**
+         * Refills the buckets for the time elapsed since the last use, and takes the tokens if there are enough.
+         * A message larger than the whole byte bucket is admitted when the bucket is full, leaving it in debt, so that
+         * large messages are delayed rather than rejected forever.
+         */
+        private synchronized boolean tryAcquire(rate_Limiter limiter, long now, int requests, long bytes){
+            long elapsed = now - lastRefillNanos;
+            if (elapsed > 0) {
+                requestTokens = Math.min(limiter.requestCapacity, requestTokens + elapsed * limiter.requestsPerNano);
+                byteTokens = Math.min(limiter.byteCapacity, byteTokens + elapsed * limiter.bytesPerNano);
+                lastRefillNanos = now;
+            }
+            boolean requestsAdmitted = limiter.requestsPerNano == 0 || requestTokens >= requests;
+            boolean bytesAdmitted = limiter.bytesPerNano == 0 || byteTokens >= Math.min(bytes, limiter.byteCapacity);
+            if (!requestsAdmitted || !bytesAdmitted) {
+                return false;
+            }
+            requestTokens -= requests;
+            byteTokens -= bytes;
+            return true;
+        }
+
+        /**
+         * @return true if the bucket was not used for the given time
+         */
+        private synchronized boolean isIdle(long now, long idleNanos){
+            return now - lastRefillNanos > idleNanos;
+        }
+    }
+}
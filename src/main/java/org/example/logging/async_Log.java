@@ -0,0 +1,278 @@
+package org.example.logging;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log for the servers' hot paths (connections, timeouts, failed transmissions), so that handling a request
+ * never waits on the console.
+ * Messages are put in a bounded ring buffer without taking any lock: producers claim a slot by advancing the tail with
+ * a compare-and-set, and a single background writer drains every message available and prints them in one write per
+ * stream. When the ring is full, messages are dropped (and counted) by default, or the producer waits for room with
+ * -Danonymizer.log.overflow=block.
+ * Identical messages are rate-limited by the writer: beyond -Danonymizer.log.repeats per second (10 by default, 0 for
+ * no limit), they are only counted, and reported once per second as a single line, on the stream of the message.
+ * Messages keep their order within each stream, but not across streams: the standard output lines of a batch are
+ * printed before its standard error lines.
+ * Optionally, -Danonymizer.log.buffer sets the number of messages the ring holds (8192 by default, rounded up to a
+ * power of two), and -Danonymizer.log.sync=true prints every message synchronously, as before.
+ * Pending messages are written when the JVM exits.
+ */
+
+public class async_Log {
+    public static final String bufferProperty = "anonymizer.log.buffer";
+    public static final String overflowProperty = "anonymizer.log.overflow";
+    public static final String repeatsProperty = "anonymizer.log.repeats";
+    public static final String syncProperty = "anonymizer.log.sync";
+    private static final long windowNanos = TimeUnit.SECONDS.toNanos(1);
+    private static final long idleParkNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long lingerParkNanos = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int lingerRounds = 20;
+    private static final async_Log instance = fromSystemProperty();
+
+    private final AtomicReferenceArray<String> messages;
+    private final boolean[] errors;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final boolean block;
+    private final int repeats;
+    private final LongAdder dropped = new LongAdder();
+    private final Map<String, int[]> repeated = new HashMap<>();
+    private final StringBuilder outBatch = new StringBuilder();
+    private final StringBuilder errBatch = new StringBuilder();
+    private final Thread writer;
+    private volatile boolean waiting;
+    private volatile boolean closing;
+    private long windowStart = System.nanoTime();
+
+    /**
+     * Creates the log and starts its background writer.
+     * @param capacity Number of messages the ring holds (rounded up to a power of two)
+     * @param block true to make producers wait for room when the ring is full, false to drop their messages
+     * @param repeats Identical messages printed per second, or 0 for no limit
+     */
+    public async_Log(int capacity, boolean block, int repeats){
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.messages = new AtomicReferenceArray<>(size);
+        this.errors = new boolean[size];
+        this.mask = size - 1;
+        this.block = block;
+        this.repeats = repeats;
+        this.writer = new Thread(this::write, "async-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Creates the log configured by the "anonymizer.log.*" system properties.
+     * @return The log, or null if messages must be printed synchronously
+     */
+    private static async_Log fromSystemProperty(){
+        if (Boolean.getBoolean(syncProperty)) {
+            return null;
+        }
+        try {
+            int capacity = Integer.parseInt(System.getProperty(bufferProperty, "8192"));
+            int repeats = Integer.parseInt(System.getProperty(repeatsProperty, "10"));
+            String overflow = System.getProperty(overflowProperty, "drop");
+            if (capacity < 1 || capacity > (1 << 24) || repeats < 0
+                    || !(overflow.equals("drop") || overflow.equals("block"))) {
+                throw new NumberFormatException("out of range");
+            }
+            return new async_Log(capacity, overflow.equals("block"), repeats);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid log configuration: " + e.getMessage() + ". Logging synchronously");
+            return null;
+        }
+    }
+
+    /**
+     * Logs a message to the standard output, without waiting for it to be printed.
+     * @param message Message to be printed, as a line
+     */
+    public static void info(String message){
+        if (instance == null) {
+            System.out.println(message);
+        } else {
+            instance.offer(message, false);
+        }
+    }
+
+    /**
+     * Logs a message to the standard error, without waiting for it to be printed.
+     * @param message Message to be printed, as a line
+     */
+    public static void error(String message){
+        if (instance == null) {
+            System.err.println(message);
+        } else {
+            instance.offer(message, true);
+        }
+    }
+
+    /**
+     * Puts a message in the ring buffer.
+     * (1.) Claims the slot at the tail, unless the ring is full: the slot of that index is only free once the writer
+     * moved the head past its previous message.
+     * (2.) Stores the message in the slot, which publishes it to the writer, and wakes the writer up if it is idle.
+     * @param message Message to be printed
+     * @param error true for the standard error, false for the standard output
+     * @return true if the message was queued, false if it was dropped
+     */
+    public boolean offer(String message, boolean error){
+        // 1.
+        long slot;
+        while (true) {
+            slot = tail.get();
+            if (slot - head >= messages.length()) {
+                if (!block || closing) {
+                    dropped.increment();
+                    return false;
+                }
+                LockSupport.parkNanos(10_000);
+            } else if (tail.compareAndSet(slot, slot + 1)) {
+                break;
+            }
+        }
+        // 2.
+        int index = (int) slot & mask;
+        errors[index] = error;
+        messages.set(index, message);
+        if (waiting) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    /**
+     * Loop of the background writer: prints every batch of available messages, and parks while the ring is empty.
+     * Right after a batch, it only parks for short periods, without asking producers to wake it up, so that a burst
+     * of messages is batched without every producer paying for a wake-up; after about a millisecond without
+     * messages, it parks until a producer wakes it up.
+     * Once the log is closing, writes what is left and stops.
+     */
+    private void write(){
+        int idleRounds = 0;
+        while (true) {
+            boolean closed = closing;
+            int written = drain();
+            flush(closed && written == 0);
+            if (closed && written == 0) {
+                return;
+            }
+            if (written > 0) {
+                idleRounds = 0;
+            } else if (idleRounds < lingerRounds) {
+                idleRounds++;
+                LockSupport.parkNanos(this, lingerParkNanos);
+            } else {
+                waiting = true;
+                if (messages.get((int) head & mask) == null && !closing) {
+                    LockSupport.parkNanos(this, idleParkNanos);
+                }
+                waiting = false;
+            }
+        }
+    }
+
+    /**
+     * Takes the messages published so far out of the ring (at most one ring's worth, so that a batch is printed even
+     * while producers keep up) and prints them, one write per stream.
+     * A claimed slot whose message is not stored yet ends the batch; it is taken by the next one.
+     * @return Number of messages taken
+     */
+    private int drain(){
+        long position = head;
+        int count = 0;
+        String message;
+        while (count < messages.length() && (message = messages.get((int) position & mask)) != null) {
+            int index = (int) position & mask;
+            boolean error = errors[index];
+            messages.lazySet(index, null);
+            head = ++position;
+            count++;
+            if (admit(message, error)) {
+                (error ? errBatch : outBatch).append(message).append(System.lineSeparator());
+            }
+        }
+        print();
+        return count;
+    }
+
+    /**
+     * Counts a message in the current one-second window, along with its stream.
+     * @return true if it is printed, false if it is repeated beyond the limit
+     */
+    private boolean admit(String message, boolean error){
+        if (repeats == 0) {
+            return true;
+        }
+        int[] count = repeated.get(message);
+        if (count == null) {
+            repeated.put(message, new int[]{1, error ? 1 : 0});
+            return true;
+        }
+        return ++count[0] <= repeats;
+    }
+
+    /**
+     * Reports the messages suppressed and dropped in the window that just ended, and starts a new window.
+     * @param force true to report even if the window did not end yet
+     */
+    private void flush(boolean force){
+        long now = System.nanoTime();
+        if (!force && now - windowStart < windowNanos) {
+            return;
+        }
+        windowStart = now;
+        for (Map.Entry<String, int[]> entry : repeated.entrySet()) {
+            int suppressed = entry.getValue()[0] - repeats;
+            if (suppressed > 0) {
+                (entry.getValue()[1] == 1 ? errBatch : outBatch).append("Suppressed ").append(suppressed).append(" repeats of: ").append(entry.getKey())
+                        .append(System.lineSeparator());
+            }
+        }
+        repeated.clear();
+        long count = dropped.sumThenReset();
+        if (count > 0) {
+            errBatch.append("Log buffer full, dropped ").append(count).append(" messages")
+                    .append(System.lineSeparator());
+        }
+        print();
+    }
+
+    private void print(){
+        print(System.out, outBatch);
+        print(System.err, errBatch);
+    }
+
+    private static void print(PrintStream stream, StringBuilder batch){
+        if (batch.length() > 0) {
+            stream.print(batch);
+            stream.flush();
+            batch.setLength(0);
+        }
+    }
+
+    /**
+     * Stops the writer once every queued message is printed, waiting at most one second. Messages logged afterwards
+     * are dropped.
+     */
+    public void close(){
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder event for one anonymization (anonymize_Service or anonymize_Byte_Service), covering the whole
+ * pass over the phrase. Recorded only while a recording with this event enabled is running.
+ */
+
+@Name("org.example.Anonymize")
+@Label("Anonymize")
+@Category({"Anonymizer", "Service"})
+@Description("Anonymization of one phrase")
+@StackTrace(false)
+public class anonymize_Event extends jdk.jfr.Event {
+    @Label("Phrase Size")
+    @DataAmount
+    public long phraseBytes;
+
+    @Label("Occurrences")
+    @Description("Number of anonymized words")
+    public int occurrences;
+
+    @Label("Pattern Rules")
+    @Description("Whether pattern rules were applied besides the keyword")
+    public boolean rules;
+
+    @Label("Dictionary")
+    @Description("Whether the words were also looked up in a dictionary of sensitive terms")
+    public boolean dictionary;
+}
@@ -0,0 +1,172 @@
+package org.example.monitoring;
+
+import jdk.jfr.ValueDescriptor;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Offline analyzer of Java Flight Recorder recordings made while running the servers, e.g. with
+ * -XX:StartFlightRecording=filename=server.jfr. Summarizes every event of the application (org.example.*) into one
+ * table per event type: percentiles of its duration, of every phase (time fields), of every size and counter, and the
+ * number of events for every value of its flags and outcomes.
+ * In order to correctly run the program, one or more recordings must be passed as command-line arguments.
+ */
+
+public class jfr_Analyzer {
+    private static final String prefix = "org.example.";
+    private static final String timespan = "jdk.jfr.Timespan";
+    private final Map<String, event_Summary> summaries = new TreeMap<>();
+
+    /**
+     * Adds every application event of a recording to the summary.
+     * @param recording Recording file
+     * @throws IOException If the recording cannot be read
+     */
+    public void addRecording(String recording) throws IOException {
+        try (RecordingFile file = new RecordingFile(Paths.get(recording))) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                String name = event.getEventType().getName();
+                if (name.startsWith(prefix)) {
+                    summaries.computeIfAbsent(name, key -> new event_Summary()).add(event);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints one table per event type, with the percentiles of every numeric field and the counts of every flag.
+     * Time values are printed in milliseconds.
+     */
+    public void print(){
+        if (summaries.isEmpty()) {
+            System.out.println("No " + prefix + "* events found. Was the recording made while the servers ran?");
+            return;
+        }
+        for (Map.Entry<String, event_Summary> entry : summaries.entrySet()) {
+            event_Summary summary = entry.getValue();
+            System.out.println(entry.getKey() + " (" + summary.count + " events)");
+            System.out.printf("  %-24s %12s %12s %12s %12s %14s%n", "", "p50", "p90", "p99", "max", "total");
+            for (Map.Entry<String, long_Samples> field : summary.numbers.entrySet()) {
+                long_Samples samples = field.getValue();
+                samples.sort();
+                boolean time = summary.times.contains(field.getKey());
+                System.out.printf("  %-24s %12s %12s %12s %12s %14s%n", field.getKey() + (time ? " (ms)" : ""),
+                        format(samples.percentile(0.5), time), format(samples.percentile(0.9), time),
+                        format(samples.percentile(0.99), time), format(samples.percentile(1.0), time),
+                        format(samples.total, time));
+            }
+            for (Map.Entry<String, Map<String, Integer>> field : summary.values.entrySet()) {
+                System.out.println("  " + field.getKey() + ": " + field.getValue());
+            }
+            System.out.println();
+        }
+    }
+
+    /**
+     * @return The value as a number, or in milliseconds for time values
+     */
+    private static String format(long value, boolean time){
+        return time ? String.format("%.3f", value / 1e6) : Long.toString(value);
+    }
+
+    /**
+     * Summary of all the events of one type: numeric samples per field (the event's own duration first) and event
+     * counts per value for flags and texts.
+     */
+    private static class event_Summary {
+        private long count;
+        private final Map<String, long_Samples> numbers = new LinkedHashMap<>();
+        private final Set<String> times = new HashSet<>();
+        private final Map<String, Map<String, Integer>> values = new LinkedHashMap<>();
+
+        private void add(RecordedEvent event){
+            count++;
+            numbers.computeIfAbsent("Duration", key -> new long_Samples()).add(event.getDuration().toNanos());
+            times.add("Duration");
+            List<ValueDescriptor> fields = event.getEventType().getFields();
+            for (ValueDescriptor field : fields) {
+                String name = field.getName();
+                if (name.equals("startTime") || name.equals("duration") || name.equals("eventThread")
+                        || name.equals("stackTrace")) {
+                    continue;
+                }
+                String label = field.getLabel() != null ? field.getLabel() : name;
+                String type = field.getTypeName();
+                if (timespan.equals(field.getContentType())) {
+                    numbers.computeIfAbsent(label, key -> new long_Samples()).add(event.getDuration(name).toNanos());
+                    times.add(label);
+                } else if (type.equals("int") || type.equals("long")) {
+                    numbers.computeIfAbsent(label, key -> new long_Samples()).add(event.getLong(name));
+                } else if (type.equals("boolean") || type.equals("java.lang.String")) {
+                    Object value = event.getValue(name);
+                    values.computeIfAbsent(label, key -> new TreeMap<>()).merge(String.valueOf(value), 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable array of samples, sorted once before computing percentiles.
+     */
+    private static class long_Samples {
+        private long[] samples = new long[64];
+        private int size;
+        private long total;
+
+        private void add(long sample){
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = sample;
+            total += sample;
+        }
+
+        private void sort(){
+            Arrays.sort(samples, 0, size);
+        }
+
+        /**
+         * Nearest-rank percentile; samples must be sorted.
+         */
+        private long percentile(double percentile){
+            int rank = (int) Math.ceil(percentile * size);
+            return samples[Math.max(0, rank - 1)];
+        }
+    }
+
+    /**
+     * This method guides the flow of the whole analysis as follows:
+     * (1.) Verifies the user inserts at least one recording.
+     * (2.) Reads every recording and prints the summary.
+     * @param args Recording files
+     */
+    public static void main(String[] args) {
+        // 1.
+        if (args.length < 1) {
+            System.err.println("Usage: jfr_Analyzer <recording.jfr> [recording.jfr ...]. Terminating!");
+            System.exit(1);
+        }
+        // 2.
+        jfr_Analyzer analyzer = new jfr_Analyzer();
+        for (String recording : args) {
+            try {
+                analyzer.addRecording(recording);
+            } catch (IOException e) {
+                System.err.println("Could not read recording " + recording + ": " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        analyzer.print();
+    }
+}
@@ -0,0 +1,31 @@
+package org.example.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event for one client connection of the TCP server, from accept until it is closed.
+ * The time the server waited in accept for it is reported apart.
+ */
+
+@Name("org.example.TcpConnection")
+@Label("TCP Connection")
+@Category({"Anonymizer", "TCP"})
+@Description("Client connection handled by the TCP server")
+@StackTrace(false)
+public class tcp_Connection_Event extends jdk.jfr.Event {
+    @Label("Accept")
+    @Description("Time the server waited in accept for this connection")
+    @Timespan(Timespan.NANOSECONDS)
+    public long acceptNanos;
+
+    @Label("Requests")
+    public int requests;
+
+    @Label("Remote Address")
+    public String remoteAddress;
+}
@@ -0,0 +1,47 @@
+package org.example.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event for one request handled by the TCP server, with the time spent in each phase.
+ * The event itself lasts from the moment the request line is complete until its response is flushed; reading the
+ * line is reported apart, from the arrival of its first bytes, so that idle time between requests is not counted.
+ */
+
+@Name("org.example.TcpRequest")
+@Label("TCP Request")
+@Category({"Anonymizer", "TCP"})
+@Description("Request handled by the TCP server")
+@StackTrace(false)
+public class tcp_Request_Event extends jdk.jfr.Event {
+    @Label("Read")
+    @Description("Time from the first bytes of the request line until the whole line was read")
+    @Timespan(Timespan.NANOSECONDS)
+    public long readNanos;
+
+    @Label("Anonymize")
+    @Timespan(Timespan.NANOSECONDS)
+    public long anonymizeNanos;
+
+    @Label("Write")
+    @Description("Time spent writing and flushing the response")
+    @Timespan(Timespan.NANOSECONDS)
+    public long writeNanos;
+
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Occurrences")
+    public int occurrences;
+
+    @Label("Outcome")
+    @Description("anonymized, invalid or rateLimited")
+    public String outcome;
+}
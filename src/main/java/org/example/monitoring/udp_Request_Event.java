@@ -0,0 +1,51 @@
+package org.example.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event for one request handled by the UDP server, with the time spent in each phase and the
+ * number of packets that had to be retransmitted while sending the response.
+ * The event itself covers anonymizing and sending the response; receiving the request is reported apart, from the
+ * arrival of the phrase's announcement until the keyword was complete.
+ */
+
+@Name("org.example.UdpRequest")
+@Label("UDP Request")
+@Category({"Anonymizer", "UDP"})
+@Description("Request handled by the UDP server")
+@StackTrace(false)
+public class udp_Request_Event extends jdk.jfr.Event {
+    @Label("Receive")
+    @Description("Time from the phrase's announcement until the keyword was complete (0 on the fast path)")
+    @Timespan(Timespan.NANOSECONDS)
+    public long receiveNanos;
+
+    @Label("Anonymize")
+    @Timespan(Timespan.NANOSECONDS)
+    public long anonymizeNanos;
+
+    @Label("Send")
+    @Description("Time spent sending the response, acknowledgment waits included")
+    @Timespan(Timespan.NANOSECONDS)
+    public long sendNanos;
+
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Occurrences")
+    public int occurrences;
+
+    @Label("Retransmissions")
+    @Description("Packets of the response sent again for lack of acknowledgment")
+    public int retransmissions;
+
+    @Label("Fast Path")
+    public boolean fastPath;
+}
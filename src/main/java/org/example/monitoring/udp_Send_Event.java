@@ -0,0 +1,33 @@
+package org.example.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder event for one packet sent reliably by the UDP server, from the first attempt until it was
+ * acknowledged or given up. By default only packets that took longer than 10 ms are recorded, which singles out
+ * the ones that waited for a retransmission.
+ */
+
+@Name("org.example.UdpReliableSend")
+@Label("UDP Reliable Send")
+@Category({"Anonymizer", "UDP"})
+@Description("Packet sent by the UDP server and waited for its acknowledgment")
+@Threshold("10 ms")
+@StackTrace(false)
+public class udp_Send_Event extends jdk.jfr.Event {
+    @Label("Packet Size")
+    @DataAmount
+    public int packetBytes;
+
+    @Label("Attempts")
+    public int attempts;
+
+    @Label("Acknowledged")
+    public boolean acknowledged;
+}
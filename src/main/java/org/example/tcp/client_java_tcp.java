@@ -1,6 +1,11 @@
 package org.example.tcp;
+import org.example.anonymizedService.diff_Spans;
+import org.example.anonymizedService.request_Options;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 /**
  * TCP/IP client that connects to a TCP server on a specific port.
@@ -12,6 +17,7 @@ import java.net.*;
 public class client_java_tcp {
     private Socket socket;
     private final String MESSAGE = "Could not connect to server. Terminating!";
+    private static final String rateLimited = "Rate limit exceeded. Try again later";
 
     /**
      * How to use: call method using the server address and port. It requires a previous setup on the server side (The server
@@ -32,6 +38,88 @@ public class client_java_tcp {
         }
     }
 
+    /**
+     * Creates a client socket connected to the specified host and port, giving up if the connection is not established
+     * within the timeout. The same timeout applies to every read, so an unresponsive server cannot block the client.
+     * Intended for programmatic use (e.g. by the cluster client), so failures are thrown instead of printed.
+     *
+     * @param host    Server name
+     * @param port    Port where server is listening to new connections
+     * @param timeout Connection and read timeout, in milliseconds
+     * @throws IOException If the connection could not be established
+     */
+    public client_java_tcp(String host, int port, int timeout) throws IOException {
+        socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeout);
+            socket.setSoTimeout(timeout);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends the phrase and keyword, exactly as sendData, but returns the server's response instead of printing it.
+     * The socket is closed once the response is complete.
+     * If the keyword carries the "diff" option (e.g. "secret -- diff"), the server only sends back the masked spans
+     * and the phrase is masked locally; the result is the same.
+     *
+     * @param phrase    Custom text to be anonymized
+     * @param keyword   Keyword to be anonymized
+     * @return An array with the anonymized text, the number of occurrences and the repetition statement
+     * @throws IOException If the request could not be sent, or the response is incomplete or invalid
+     */
+    public String[] requestAnonymization(String phrase, String keyword) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
+
+            out.println(phrase + " -- " + keyword);
+
+            String[] result = new String[3];
+            result[0] = in.readLine();
+            result[2] = "Socket Programming";
+            int repetitions = 0;
+            String line;
+            while ((line = in.readLine()) != null && !line.equals("Transmission Complete")) {
+                repetitions++;
+            }
+            if (result[0] == null || line == null) {
+                throw new IOException("Incomplete response from server");
+            }
+            if (result[0].equals(rateLimited)) {
+                throw new IOException("Rate limited by server");
+            }
+            result[0] = applySpans(phrase, keyword, result[0]);
+            if (result[0] == null) {
+                throw new IOException("Invalid spans from server");
+            }
+            result[1] = Integer.toString(repetitions);
+            return result;
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Masks the phrase locally, when the server answered a "diff" request with the masked spans (see diff_Spans).
+     * A server that does not know the option answers with the anonymized text, which is kept as it is.
+     * @param phrase  Custom text sent to the server
+     * @param keyword Keyword sent to the server, with its options
+     * @param line    First line of the response
+     * @return The anonymized text, or null if the spans are malformed
+     */
+    private static String applySpans(String phrase, String keyword, String line) {
+        byte[] keywordBytes = keyword.getBytes(StandardCharsets.UTF_8);
+        if (!line.startsWith(diff_Spans.marker)
+                || !request_Options.parse(ByteBuffer.wrap(keywordBytes), 0, keywordBytes.length).isDiff()) {
+            return line;
+        }
+        return diff_Spans.apply(phrase.getBytes(StandardCharsets.UTF_8), line);
+    }
+
     /**
      * How to use: insert phrase and keyword that is meant to be sent to the server.
      * Receives a piece of text (phrase) and keyword and performs the following steps:
@@ -48,12 +136,12 @@ public class client_java_tcp {
         try {
             // 1.
             InputStream inputStream = socket.getInputStream();
-            InputStreamReader inputStreamReader = new InputStreamReader(inputStream);
+            InputStreamReader inputStreamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
             BufferedReader in = new BufferedReader(inputStreamReader);
 
             // 2.
             OutputStream outputStream = socket.getOutputStream();
-            PrintWriter out = new PrintWriter(outputStream, true);
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), true);
 
             // 3.
             String dataToSend = phrase + " -- " + keyword;
@@ -61,12 +149,18 @@ public class client_java_tcp {
 
             // 4.
             String line;
+            boolean first = true;
             while ((line = in.readLine()) != null) {
 
                 // 5.
                 if (line.equals("Transmission Complete")) {
                     break;
                 }
+                if (first) {
+                    String anonymized = applySpans(phrase, keyword, line);
+                    line = anonymized != null ? anonymized : line;
+                    first = false;
+                }
                 System.out.println(line);
             }
 
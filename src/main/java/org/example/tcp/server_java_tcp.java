@@ -1,21 +1,58 @@
 package org.example.tcp;
-import org.example.anonymizedService.anonymize_Service;
+import org.example.anonymizedService.anonymize_Byte_Service;
+import org.example.anonymizedService.diff_Spans;
+import org.example.anonymizedService.request_Options;
+import org.example.anonymizedService.term_Dictionary;
+import org.example.capture.capture_Record;
+import org.example.capture.capture_Writer;
+import org.example.limiter.rate_Limiter;
+import org.example.logging.async_Log;
+import org.example.monitoring.tcp_Connection_Event;
+import org.example.monitoring.tcp_Request_Event;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 /**
  * TCP/IP server that sends back an anonymized message, depending on the client's input.
  * In order to correctly run the program, the server port must be passed as a command-line argument.
+ * Optionally, when started with -Danonymizer.capture=&lt;file&gt;, every request is recorded in a capture log.
+ * Optionally, when started with -Danonymizer.rateLimit.requests and/or -Danonymizer.rateLimit.bytes, every client
+ * address is limited to that many requests and bytes per second (see rate_Limiter).
+ * Optionally, when started with -Danonymizer.dictionary=&lt;file&gt;, every word found in that dictionary of sensitive
+ * terms is anonymized as well (see term_Dictionary and dictionary_Compiler).
+ * Every connection and request is reported to Java Flight Recorder (tcp_Connection_Event, tcp_Request_Event), with
+ * the time spent in each phase, whenever a recording is running.
+ * Messages about connections, timeouts and failures are logged asynchronously (see async_Log), so that a slow console
+ * never slows the server down.
  */
 
 public class server_java_tcp {
 
     private ServerSocket socket;
+    private final capture_Writer capture = capture_Writer.fromSystemProperty();
+    private final rate_Limiter limiter = rate_Limiter.fromSystemProperty();
+    private final term_Dictionary dictionary = term_Dictionary.fromSystemProperty();
+    private final diff_Spans spans = new diff_Spans();
+    private byte[] lineBuffer = new byte[1024];
+    private final byte[] readBuffer = new byte[8192];
+    private int readPosition;
+    private int readLimit;
+    private long lineStartNanos;
+    private static final byte[] delimiterBytes = " -- ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] repetitionBytes = "Socket Programming\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] completeBytes = "Transmission Complete\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] rateLimitedBytes =
+            "Rate limit exceeded. Try again later\nTransmission Complete\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] invalidBytes =
+            "Did not receive valid string from client. Terminating\n".getBytes(StandardCharsets.UTF_8);
 
     /**
      * Starts the server side, binding a ServerSocket to the specified port in the command line.
@@ -35,67 +72,222 @@ public class server_java_tcp {
     /**
      * Waits for a connection from the client side. After establishing a connection, sends back the anonymized String
      * and the message "Socket Programming" as many times as the keyword is found in the received string.
+     * Requests are handled as UTF-8 bytes from the moment they are read until the response is written, without
+     * decoding them into Strings.
      * (1.) Creates client socket while waiting for connection.
      * (2.) While active, the server listens for connections
      * (3.) When a connection is established it sends out a confirmation that includes the client's address and port.
-     * (4.) Creates input and output stream mediums.
+     * (4.) Creates input and (buffered) output stream mediums.
      * (5.) Receives input from client, and splits the text from the keyword based on a delimiter "--".
-     * (6.) Replaces all instances of keyword with "X" and writes the new message in the socket.
+     * When rate limiting is enabled and the client exceeded its limits, the request is not anonymized: the client is
+     * told so and disconnected, so that the server moves on to the other clients.
+     * (6.) Replaces all instances of keyword (and, if the keyword carries options, every word matching the rules asked
+     * for) with "X", in place, and writes the new message in the socket. If the client asked for the "diff" option,
+     * writes the masked spans instead (see diff_Spans), since the client already has the phrase.
      * Additionally, stores the number of times the word chosen was anonymized.
-     * (7.) Writes in the sockets the message "Socket Programming" as many times as the keyword was found.
+     * (7.) Writes in the sockets the message "Socket Programming" as many times as the keyword was found, and flushes
+     * the whole response at once.
      * (8.) Once all responses are sent, the server closes the input and output streams and closes the clientSocket.
      * Server socket starts "listening" again on the same port.
      */
     public void connectionToServer(){
         // 1.
         Socket clientSocket;
+        anonymize_Byte_Service anonymizeService = new anonymize_Byte_Service(dictionary);
 
 
 
         // 2.
         while(true){
             try{
+                long acceptStart = System.nanoTime();
                 clientSocket = socket.accept();
+                tcp_Connection_Event connectionEvent = new tcp_Connection_Event();
+                connectionEvent.begin();
+                long acceptNanos = System.nanoTime() - acceptStart;
+                int requests = 0;
         // 3.
-                System.out.println("Connected to " + clientSocket.getInetAddress() + "  " + clientSocket.getPort());
+                async_Log.info("Connected to " + clientSocket.getInetAddress() + "  " + clientSocket.getPort());
         // 4.
-                BufferedReader in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-                PrintWriter out = new PrintWriter(clientSocket.getOutputStream(),true);
+                InputStream in = clientSocket.getInputStream();
+                readPosition = 0;
+                readLimit = 0;
+                OutputStream out = new BufferedOutputStream(clientSocket.getOutputStream());
 
         // 5.
-                String inputLine;
-                while((inputLine = in.readLine()) != null) {
+                int lineLength;
+                while((lineLength = readLine(in)) != -1) {
 
-                    String[] parts = inputLine.split(" -- ", 2);
-                    if (parts.length == 2) {
+                    long requestNanos = System.nanoTime();
+                    tcp_Request_Event event = new tcp_Request_Event();
+                    event.begin();
+                    requests++;
+                    if (limiter != null && !limiter.tryAcquire(clientSocket.getInetAddress(), 1, lineLength)) {
+                        out.write(rateLimitedBytes);
+                        out.flush();
+                        commitRequest(event, requestNanos, requestNanos, requestNanos, lineLength, 0, "rateLimited");
+                        break;
+                    }
+                    int delimiter = delimiterIndex(lineLength);
+                    if (delimiter != -1) {
+
+                        int keywordStart = delimiter + delimiterBytes.length;
+                        long sequence = -1;
+                        if (capture != null) {
+                            sequence = capture.captureRequest(capture_Record.tcp, requestNanos,
+                                    ByteBuffer.wrap(lineBuffer, 0, delimiter),
+                                    ByteBuffer.wrap(lineBuffer, keywordStart, lineLength - keywordStart), null);
+                        }
 
-                        String originalString = parts[0];
-                        String keyword = parts[1];
+                        long anonymizeStart = System.nanoTime();
+                        ByteBuffer originalString = ByteBuffer.wrap(lineBuffer, 0, delimiter);
+                        request_Options options = request_Options.parse(ByteBuffer.wrap(lineBuffer), keywordStart, lineLength);
+                        int[] keyword = anonymize_Byte_Service.keywordCodePoints(
+                                ByteBuffer.wrap(lineBuffer), keywordStart, options.getKeywordEnd());
         // 6.
-                        anonymize_Service anonimizeService = new anonymize_Service();
-                        String[] modifiedData = anonimizeService.stringAnonymizer(originalString,keyword);
+                        diff_Spans requestSpans = options.isDiff() ? spans : null;
+                        if (requestSpans != null) {
+                            requestSpans.clear();
+                        }
+                        int repetitions = anonymizeService.byteAnonymizer(originalString, keyword, options.getRules(),
+                                requestSpans);
+                        long writeStart = System.nanoTime();
 
-                        out.println(modifiedData[0]);
+                        if (requestSpans != null) {
+                            requestSpans.writeTo(out);
+                        } else {
+                            out.write(lineBuffer, 0, originalString.limit());
+                        }
+                        out.write('\n');
         // 7.
-                        int repetitions = Integer.parseInt(modifiedData[1]);
                         stringRepeater(out,repetitions);
-                        out.println("Transmission Complete");
+                        out.write(completeBytes);
+                        out.flush();
+                        commitRequest(event, requestNanos, anonymizeStart, writeStart, lineLength, repetitions,
+                                "anonymized");
+                        if (capture != null) {
+                            capture.captureResponse(sequence, System.nanoTime() - requestNanos);
+                        }
 
                     } else {
-                        out.println("Did not receive valid string from client. Terminating");
+                        out.write(invalidBytes);
+                        out.flush();
+                        commitRequest(event, requestNanos, requestNanos, requestNanos, lineLength, 0, "invalid");
                     }
                 }
         // 8.
-                System.out.println("Client exiting...");
+                async_Log.info("Client exiting...");
                 in.close();
                 out.close();
                 clientSocket.close();
+                connectionEvent.end();
+                if (connectionEvent.shouldCommit()) {
+                    connectionEvent.acceptNanos = acceptNanos;
+                    connectionEvent.requests = requests;
+                    connectionEvent.remoteAddress = clientSocket.getInetAddress().getHostAddress();
+                    connectionEvent.commit();
+                }
 
             }catch (IOException e){
-                System.err.println("Result transmission failed. Terminating!");
+                async_Log.error("Result transmission failed. Terminating!");
+            }
+        }
+
+    }
+
+    /**
+     * Completes the flight recorder event of a request whose response was just flushed, if it is being recorded.
+     * @param event Event of the request, begun once its line was read
+     * @param readEnd When the request line was complete
+     * @param anonymizeStart When anonymization started (readEnd if the request was not anonymized)
+     * @param writeStart When writing the response started (anonymizeStart if the request was not anonymized)
+     * @param requestBytes Number of bytes of the request line
+     * @param occurrences Number of anonymized words
+     * @param outcome "anonymized", "invalid" or "rateLimited"
+     */
+    private void commitRequest(tcp_Request_Event event, long readEnd, long anonymizeStart, long writeStart,
+                               int requestBytes, int occurrences, String outcome){
+        long now = System.nanoTime();
+        event.end();
+        if (event.shouldCommit()) {
+            event.readNanos = readEnd - lineStartNanos;
+            event.anonymizeNanos = writeStart - anonymizeStart;
+            event.writeNanos = now - writeStart;
+            event.requestBytes = requestBytes;
+            event.occurrences = occurrences;
+            event.outcome = outcome;
+            event.commit();
+        }
+    }
+
+    /**
+     * Reads the next line sent by the client into the line buffer, growing it when needed.
+     * Bytes are read from the socket in blocks into the read buffer and scanned from there.
+     * Lines end with "\n"; a "\r" right before it is dropped, as BufferedReader.readLine does.
+     * The moment the first bytes of the line are available is kept in lineStartNanos.
+     * @param in Stream where the client's requests are read from
+     * @return Number of bytes of the line, or (-1) if the client closed the connection
+     * @throws IOException If an I/O error occurs
+     */
+    private int readLine(InputStream in) throws IOException {
+        int length = 0;
+        while(true){
+            if(readPosition == readLimit){
+                readLimit = in.read(readBuffer);
+                readPosition = 0;
+                if(readLimit == -1){
+                    readLimit = 0;
+                    return length == 0 ? -1 : stripCarriageReturn(length);
+                }
+            }
+            int start = readPosition;
+            if(length == 0){
+                lineStartNanos = System.nanoTime();
+            }
+            while(readPosition < readLimit && readBuffer[readPosition] != '\n'){
+                readPosition++;
+            }
+            int chunk = readPosition - start;
+            if(length + chunk > lineBuffer.length){
+                lineBuffer = Arrays.copyOf(lineBuffer, Math.max(lineBuffer.length * 2, length + chunk));
             }
+            System.arraycopy(readBuffer, start, lineBuffer, length, chunk);
+            length += chunk;
+            if(readPosition < readLimit){
+                readPosition++;
+                return stripCarriageReturn(length);
+            }
+        }
+    }
+
+    /**
+     * Drops the "\r" that ends the line stored in the line buffer, if any.
+     * @param length Number of bytes of the line
+     * @return Number of bytes of the line without the "\r"
+     */
+    private int stripCarriageReturn(int length){
+        if(length > 0 && lineBuffer[length - 1] == '\r'){
+            return length - 1;
         }
+        return length;
+    }
 
+    /**
+     * Finds the first occurrence of the delimiter " -- " that separates the phrase from the keyword.
+     * @param lineLength Number of bytes of the line stored in the line buffer
+     * @return Index where the delimiter starts, or (-1) if the line does not contain it
+     */
+    private int delimiterIndex(int lineLength){
+        for(int i = 0; i + delimiterBytes.length <= lineLength; i++){
+            int j = 0;
+            while(j < delimiterBytes.length && lineBuffer[i + j] == delimiterBytes[j]){
+                j++;
+            }
+            if(j == delimiterBytes.length){
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -103,10 +295,11 @@ public class server_java_tcp {
      * of the word anonymized
      * @param out Object used for writing in the socket
      * @param numberOfReps Number of times the server will send the message "Socket Programming"
+     * @throws IOException If an I/O error occurs
      */
-    public void stringRepeater(PrintWriter out, int numberOfReps){
+    public void stringRepeater(OutputStream out, int numberOfReps) throws IOException {
         for (int i = 0; i < numberOfReps; i++) {
-            out.println("Socket Programming");
+            out.write(repetitionBytes);
         }
     }
 
@@ -1,8 +1,15 @@
 package org.example.udp;
+import org.example.anonymizedService.diff_Spans;
+import org.example.anonymizedService.request_Options;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
 import static java.lang.Integer.parseInt;
 
 /**
@@ -11,18 +18,30 @@ import static java.lang.Integer.parseInt;
  * No arguments are needed to execute the file. However, in order to have a successful result, server data
  * (IP or name, and port number) as well as valid message and keyword (not empty) must be passed by the user upon request.
  * For every message to be sent, the server first informs the client about the number of packets it should receive.
- * Only after this operation, the proper message is sent (in several packets, as needed).
+ * Only after this operation, the proper message is sent (in several packets, as needed), each packet carrying its index.
  * Additionally, for every packet sent, an acknowledgment must be received before sending the next one.
  * Transmission will fail after 3 attempts to send the same packet without any feedback from the server. DatagramSocket closes.
+ * The keyword is sent asking for a compact response, so the server answers with one single message holding the
+ * anonymized message, the number of occurrences and the "Socket Programming" statement.
+ * Requests small enough are instead sent in one single datagram (see udp_FastPath), which costs one round trip when
+ * the answer fits in one datagram too. Servers that do not know this request type make the client fall back to the
+ * fragmented path.
  * If the entire process succeeds, the anonymized message is printed on the console, followed by the statement
  * "Socket Programming" as many times as the keyword was found in the message. Client's DatagramSocket is closed.
  */
 
 public class client_java_udp {
     private DatagramSocket udpSocket;
-    private byte[] receiveData = new byte[bufferLength];
-    private byte[] sendData = new byte[bufferLength];
     private static int bufferLength = 20;
+    private byte[] receiveData = new byte[Math.max(udp_FastPath.maximumDatagram, udp_Reassembler.headerLength + bufferLength)];
+    private byte[] sendData = new byte[udp_Reassembler.headerLength + bufferLength];
+    private final byte[] fastData = new byte[udp_FastPath.maximumDatagram];
+    private final DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+    private final udp_Reassembler reassembler = new udp_Reassembler(bufferLength);
+    private static final byte[] ackBytes = "ACK".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] pingBytes = "Ping".getBytes(StandardCharsets.UTF_8);
+    private static final String[] noFastPath = new String[0];
+    private boolean quiet;
 
     /**
      * Creates a DatagramSocket and sets its reception timeout
@@ -39,9 +58,19 @@ public class client_java_udp {
     }
 
     /**
-     * Determining the total number of packets required for sending/reconstructing the original message and then
-     * storing an array of chuncks of data from the provided message.
-     * The process involves transmitting the count of fragments first, followed by the transmission of the fragmented message.
+     * Stops or resumes printing timeouts, I/O errors and failed sends, for callers that expect them and count failures
+     * themselves (e.g. the fault scenarios). Requests still return null when they fail.
+     * @param quiet true to stop printing them
+     */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Determining the total number of packets required for sending/reconstructing the original message, once encoded
+     * in UTF-8.
+     * The process involves transmitting the count of fragments first, followed by the transmission of the fragmented
+     * message. Each fragment carries its index, so that the server can place it in its reassembly buffer.
      * Every sending process is made in a reliable way.
      * @param message Message to be sent
      * @param address IP address of the UDP server
@@ -50,95 +79,131 @@ public class client_java_udp {
      */
 
     public int sendMessage(String message, InetAddress address, int port) {
+        return sendMessage(message, address, port, false);
+    }
+
+    /**
+     * Sends a message reliably, exactly as sendMessage, optionally asking the server for a compact response.
+     * In compact mode, the server replies with a single message carrying the occurrence count, the repetition statement
+     * and the anonymized text (see requestAnonymization), instead of one reliable message for each of them.
+     * @param message Message to be sent
+     * @param address IP address of the UDP server
+     * @param port    Port where UDP server is running
+     * @param compact true to flag the announcement of this message as asking for a compact response
+     * @return (-1) if string or number of fragments sending failed; (0) if sending was successful;
+     */
+    public int sendMessage(String message, InetAddress address, int port, boolean compact) {
+        return sendMessage(message.getBytes(StandardCharsets.UTF_8), address, port, compact, 0, null, 0);
+    }
+
+    /**
+     * Sends a message reliably, exactly as sendMessage, optionally holding each fragment until it is due.
+     * @param bytes   UTF-8 encoded message
+     * @param address IP address of the UDP server
+     * @param port    Port where UDP server is running
+     * @param compact true to flag the announcement of this message as asking for a compact response
+     * @param startNanos System.nanoTime() the offsets are relative to
+     * @param offsetsNanos Time at which every fragment is due, relative to startNanos, or null to send them at once
+     * @param firstFragment Index in offsetsNanos of the first fragment of this message
+     * @return (-1) if string or number of fragments sending failed; (0) if sending was successful;
+     */
+    private int sendMessage(byte[] bytes, InetAddress address, int port, boolean compact, long startNanos,
+                            long[] offsetsNanos, int firstFragment) {
         //Calculate number of fragments, in case buffer length is lower than the message length
-        int messageLength = message.length();
-        int numberOfFragments = (int) Math.ceil((double) messageLength / bufferLength);
-        String[] fragmentedMessage = divideMessage(message,numberOfFragments);
+        int numberOfFragments = udp_Reassembler.numberOfFragments(bytes.length, bufferLength);
 
-        if(sendReliablePacket("Packets: " + numberOfFragments,address,port) == -1){
+        String flag = compact ? udp_Reassembler.compactSuffix : "";
+        byte[] announcement = ("Packets: " + numberOfFragments + flag).getBytes(StandardCharsets.UTF_8);
+        if(sendReliablePacket(announcement,announcement.length,address,port) == -1){
             return -1;
         }
 
         for(int i = 0; i < numberOfFragments; i++){
-            if(sendReliablePacket(fragmentedMessage[i],address,port) == -1){
+            if(offsetsNanos != null && firstFragment + i < offsetsNanos.length){
+                long due = startNanos + offsetsNanos[firstFragment + i];
+                long wait;
+                while((wait = due - System.nanoTime()) > 0){
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            int fragmentLength = udp_Reassembler.writeFragment(bytes,bytes.length,i,bufferLength,sendData);
+            if(sendReliablePacket(sendData,fragmentLength,address,port) == -1){
                 return -1;
             }
         }
         return 0;
     }
 
-    /**
-     * Dividing the provided message into fragments, the size of each determined by the buffer size,
-     * @param message Message to be sent
-     * @param numberOfFragments number of fragments in which the message should be divided
-     * @return an array of the fragmented message.
-     */
-
-    private String[] divideMessage(String message, int numberOfFragments){
-        String[] fragments = new String[numberOfFragments];
-        if(numberOfFragments == 1){
-            fragments[0] = message;
-            return fragments;
-        }
-        for(int i = 0; i < numberOfFragments; i++){
-            int start = i * bufferLength;
-            int end = Math.min((i + 1) * bufferLength, message.length());
-            fragments[i] = message.substring(start,end);
-        }
-        return fragments;
-    }
-
     /**
      * Sends the received message to the indicated address and port. If message send is acknowledged by the server the function returns 1
      * if not it retries sending two more times. If message is not acknowledged by the third time, the function exits and returns (-1)
-     * @param message  Message to be sent
+     * @param message  Buffer holding the message to be sent
+     * @param length   Number of bytes of the message
      * @param address  IP address of the UDP server
      * @param port     Port where UDP server is running
      * @return (-1) if string or number of fragments sending failed; (0) if sending was successful;
      */
 
-    private int sendReliablePacket(String message, InetAddress address, int port) {
+    private int sendReliablePacket(byte[] message, int length, InetAddress address, int port) {
         int counter = 0;
-        String received = "NONE";
-        while (!received.equals("ACK") && counter < 3) {
+        boolean acknowledged = false;
+        while (!acknowledged && counter < 3) {
             counter++;
             try {
-                sendPacket(message, address, port);
-                received = receivePacket();
+                sendPacket(message, length, address, port);
+                acknowledged = isAck(receivePacket());
 
             }catch(SocketTimeoutException e){
-                System.err.println("Timeout reached: " + e.getMessage());
+                if(!quiet){
+                    System.err.println("Timeout reached: " + e.getMessage());
+                }
             }catch(IOException e){
-                System.err.println("I/O error: " + e.getMessage());
+                if(!quiet){
+                    System.err.println("I/O error: " + e.getMessage());
+                }
             }
         }
-        //To validate if the message was successfully sent:
-        if(counter == 3){
-            System.out.println("Failed to send string. Terminating!");
+        //To validate if the message was successfully sent (an acknowledgment on the last attempt is a success too):
+        if(!acknowledged){
+            if(!quiet){
+                System.out.println("Failed to send string. Terminating!");
+            }
             return -1;
         }
         return 0;
     }
 
     /**
-     * Extracts message bytes and stores them in a byte array. Then sends that information using a DatagramPacket.
-     * @param message  Message to be sent
+     * Checks whether the last received packet is an acknowledgment, comparing its bytes with "ACK".
+     * @param length Number of bytes received
+     * @return true if the packet is "ACK"
+     */
+    private boolean isAck(int length) {
+        return length == ackBytes.length
+                && receiveData[0] == ackBytes[0] && receiveData[1] == ackBytes[1] && receiveData[2] == ackBytes[2];
+    }
+
+    /**
+     * Sends the first bytes of a byte array using a DatagramPacket.
+     * @param message  Buffer holding the message to be sent
+     * @param length   Number of bytes to be sent
      * @param address  IP address of the UDP server
      * @param port     Port where UDP server is running
      * @throws IOException  if an I/O error occurs.
      */
 
-    private void sendPacket(String message, InetAddress address, int port) throws IOException {
-        sendData = message.getBytes();
-        DatagramPacket packet = new DatagramPacket(sendData, sendData.length, address, port);
+    private void sendPacket(byte[] message, int length, InetAddress address, int port) throws IOException {
+        DatagramPacket packet = new DatagramPacket(message, length, address, port);
         udpSocket.send(packet);
     }
 
     /**
      * Returns a message from the specified host and port by retrieving fragments of the message
      * and reconstructing the original message. The function first receives a reliable packet (ACKnowledge),
-     * which includes information about the total number of fragments to be received. Then, it proceeds
-     * to receive and concatenate each fragment until the complete message is reconstructed.
+     * which includes information about the total number of fragments to be received. Packets received before it that are
+     * not an announcement (late retransmissions of the previous message) are acknowledged and skipped, up to 3 of them.
+     * Then, it proceeds to receive each fragment and hands it to the reassembler, which places it by its index.
+     * The message is decoded only once complete. Reception is abandoned after 3 consecutive timeouts.
      *
      * @param hostname The hostname or IP address of the sender.
      * @param port     The port number on which the message is being received.
@@ -148,62 +213,280 @@ public class client_java_udp {
 
 
     public String receiveMessage(String hostname, int port){
-        String message = receiveReliablePacket(hostname, port);
+        InetAddress address;
+        try{
+            address = InetAddress.getByName(hostname);
+        }catch (UnknownHostException e){
+            System.err.println("Host not found: " + e.getMessage());
+            return null;
+        }
+        return receiveMessage(address, port);
+    }
+
+    /**
+     * Same as receiveMessage, for an already resolved sender address.
+     * @param address  IP address of the sender.
+     * @param port     The port number on which the message is being received.
+     * @return The reconstructed message if successful, or null if an error occurs during the reception.
+     */
+    public String receiveMessage(InetAddress address, int port){
+        int numberFragments = -1;
+        for(int attempt = 0; attempt < 3 && numberFragments == -1; attempt++) {
+            int length = receiveReliablePacket(address, port);
+            if(length == -1){
+                return null;
+            }
+            numberFragments = udp_Reassembler.parseAnnouncement(receiveData, 0, length);
+        }
+        return receiveFragments(address, port, numberFragments);
+    }
+
+    /**
+     * Receives the fragments of a message whose announcement was already received and acknowledged, and decodes it
+     * once complete. Reception is abandoned after 3 consecutive timeouts.
+     * @param address  IP address of the sender.
+     * @param port     The port number on which the message is being received.
+     * @param numberFragments Number of fragments announced, or (-1) if the announcement was malformed
+     * @return The reconstructed message if successful, or null if an error occurs during the reception.
+     */
+    private String receiveFragments(InetAddress address, int port, int numberFragments){
+        if(numberFragments == -1 || !reassembler.begin(numberFragments)){
+            return null;
+        }
+
+        int timeouts = 0;
+        while(!reassembler.isComplete()) {
+            int length = receiveReliablePacket(address, port);
+            if(length == -1){
+                if(++timeouts == 3){
+                    reassembler.abort();
+                    return null;
+                }
+                continue;
+            }
+            timeouts = 0;
+            reassembler.place(receiveData, 0, length);
+        }
+
+        return reassembler.completeAsString();
+
+    }
+
+    /**
+     * Sends the phrase and the keyword, asking for a compact response, and waits for that single response.
+     * The compact response holds the occurrence count and the repetition statement, each followed by a line break,
+     * and then the anonymized text: "count\nSocket Programming\nanonymized text".
+     * Requests that fit in one datagram go through the fast path first (see requestFast).
+     * If the keyword carries the "diff" option (e.g. "secret -- diff"), the server only sends back the masked spans
+     * and the phrase is masked locally; the result is the same.
+     * @param phrase  Custom text to be anonymized
+     * @param keyword Keyword to be anonymized
+     * @param address IP address of the UDP server
+     * @param port    Port where UDP server is running
+     * @return An array with the anonymized text, the number of occurrences and the repetition statement,
+     * or null if sending or receiving failed or the response is malformed.
+     */
+    public String[] requestAnonymization(String phrase, String keyword, InetAddress address, int port){
+        byte[] phraseBytes = phrase.getBytes(StandardCharsets.UTF_8);
+        byte[] keywordBytes = keyword.getBytes(StandardCharsets.UTF_8);
+        boolean diff = request_Options.parse(ByteBuffer.wrap(keywordBytes), 0, keywordBytes.length).isDiff();
+        if(udp_FastPath.fits(phraseBytes.length, keywordBytes.length)){
+            String[] result = requestFast(phraseBytes, keywordBytes, address, port);
+            if(result != noFastPath){
+                return diff ? applySpans(result, phraseBytes) : result;
+            }
+        }
+        return requestFragmented(phraseBytes, keywordBytes, diff, address, port, 0, null);
+    }
+
+    /**
+     * Sends the phrase and the keyword as requestAnonymization does, but always through the fragmented path, holding
+     * every fragment until it is due (used to replay captured requests with their original fragment timings).
+     * @param phrase  Custom text to be anonymized
+     * @param keyword Keyword to be anonymized
+     * @param offsetsNanos Time at which every fragment of the phrase and then of the keyword is due, relative to the
+     *                     announcement of the phrase; fragments beyond its length are sent at once
+     * @param address IP address of the UDP server
+     * @param port    Port where UDP server is running
+     * @return An array with the anonymized text, the number of occurrences and the repetition statement,
+     * or null if sending or receiving failed or the response is malformed.
+     */
+    public String[] requestPaced(String phrase, String keyword, long[] offsetsNanos, InetAddress address, int port){
+        byte[] phraseBytes = phrase.getBytes(StandardCharsets.UTF_8);
+        byte[] keywordBytes = keyword.getBytes(StandardCharsets.UTF_8);
+        boolean diff = request_Options.parse(ByteBuffer.wrap(keywordBytes), 0, keywordBytes.length).isDiff();
+        return requestFragmented(phraseBytes, keywordBytes, diff, address, port, System.nanoTime(), offsetsNanos);
+    }
 
-        if(!message.contains("Packets: ")){
+    /**
+     * Sends the phrase and the keyword as two reliable messages, the keyword asking for a compact response, and waits
+     * for that response.
+     * @param phrase  UTF-8 encoded phrase
+     * @param keyword UTF-8 encoded keyword
+     * @param diff true if the keyword carries the "diff" option
+     * @param address IP address of the UDP server
+     * @param port    Port where UDP server is running
+     * @param startNanos System.nanoTime() the offsets are relative to
+     * @param offsetsNanos Time at which every fragment is due, relative to startNanos, or null to send them at once
+     * @return An array with the anonymized text, the number of occurrences and the repetition statement,
+     * or null if sending or receiving failed or the response is malformed.
+     */
+    private String[] requestFragmented(byte[] phrase, byte[] keyword, boolean diff, InetAddress address, int port,
+                                       long startNanos, long[] offsetsNanos){
+        int keywordFragment = udp_Reassembler.numberOfFragments(phrase.length, bufferLength);
+        if(sendMessage(phrase,address,port,false,startNanos,offsetsNanos,0) == -1
+                || sendMessage(keyword,address,port,true,startNanos,offsetsNanos,keywordFragment) == -1){
             return null;
         }
-        // Split the string by colon
-        String[] parts = message.split(":");
-        if (parts.length < 2) {
+        String response = receiveMessage(address, port);
+        if(response == null){
             return null;
         }
-        int numberFragments = Integer.parseInt(parts[1].trim());
+        String[] result = parseCompactResponse(response);
+        return diff ? applySpans(result, phrase) : result;
+    }
 
-        String finalMessage = "";
+    /**
+     * Masks the phrase locally, when the server answered a "diff" request with the masked spans (see diff_Spans).
+     * A server that does not know the option answers with the anonymized text, which is kept as it is.
+     * @param result Parsed compact response, or null
+     * @param phrase UTF-8 encoded phrase, as sent to the server
+     * @return The response holding the anonymized text, or null if it is missing or its spans are malformed
+     */
+    private static String[] applySpans(String[] result, byte[] phrase){
+        if(result == null || !result[0].startsWith(diff_Spans.marker)){
+            return result;
+        }
+        result[0] = diff_Spans.apply(phrase, result[0]);
+        return result[0] == null ? null : result;
+    }
 
-        for(int i = 0; i < numberFragments; i++) {
-            String splitMessage = receiveReliablePacket(hostname, port);
-            finalMessage = String.join("", finalMessage, splitMessage);
+    /**
+     * Sends the phrase and the keyword in one single datagram (see udp_FastPath), retransmitting it with the same
+     * request id up to 3 times, and waits for the answer.
+     * (1.) A fast path answer carrying the request id holds the compact response.
+     * (2.) An announcement means the answer did not fit in one datagram: it is received as a reliable compact message.
+     * (3.) An acknowledgment means the server does not know fast path requests (it took the datagram for a malformed
+     * announcement): the request has to go through the fragmented path.
+     * Any other datagram is a late leftover of an earlier exchange, and is ignored.
+     * @param phrase  UTF-8 encoded phrase
+     * @param keyword UTF-8 encoded keyword
+     * @param address IP address of the UDP server
+     * @param port    Port where UDP server is running
+     * @return An array with the anonymized text, the number of occurrences and the repetition statement; null if the
+     * request failed; noFastPath if the server does not support the fast path.
+     */
+    private String[] requestFast(byte[] phrase, byte[] keyword, InetAddress address, int port){
+        long id = ThreadLocalRandom.current().nextLong();
+        int requestLength = udp_FastPath.writeRequest(fastData, id, phrase, keyword);
+        for(int attempt = 0; attempt < 3; attempt++){
+            try{
+                sendPacket(fastData, requestLength, address, port);
+                for(int ignored = 0; ignored < 3; ignored++){
+                    int length = receivePacket();
+                    // 1.
+                    if(udp_FastPath.isFast(receiveData, length) && udp_FastPath.requestId(receiveData) == id){
+                        return parseCompactResponse(new String(receiveData, udp_FastPath.responseHeaderLength,
+                                length - udp_FastPath.responseHeaderLength, StandardCharsets.UTF_8));
+                    }
+                    // 2.
+                    int numberFragments = udp_Reassembler.parseAnnouncement(receiveData, 0, length);
+                    if(numberFragments != -1){
+                        sendPacket(ackBytes, ackBytes.length, address, port);
+                        String response = receiveFragments(address, port, numberFragments);
+                        return response == null ? null : parseCompactResponse(response);
+                    }
+                    // 3.
+                    if(isAck(length)){
+                        return noFastPath;
+                    }
+                }
+            }catch(SocketTimeoutException e){
+                if(!quiet){
+                    System.err.println("Timeout reached: " + e.getMessage());
+                }
+            }catch(IOException e){
+                if(!quiet){
+                    System.err.println("I/O error: " + e.getMessage());
+                }
+                return null;
+            }
+        }
+        if(!quiet){
+            System.out.println("Failed to send string. Terminating!");
         }
+        return null;
+    }
 
-        return finalMessage;
+    /**
+     * Checks whether a UDP server is alive: sends it a "Ping" packet and waits, within the socket timeout, for its
+     * acknowledgment. The server acknowledges it without treating it as a message.
+     * @param address IP address of the UDP server
+     * @param port    Port where UDP server is running
+     * @return true if the server acknowledged the ping
+     */
+    public boolean ping(InetAddress address, int port){
+        try{
+            sendPacket(pingBytes, pingBytes.length, address, port);
+            return isAck(receivePacket());
+        }catch (IOException e){
+            return false;
+        }
+    }
 
+    /**
+     * Splits a compact response into its anonymized text, number of occurrences and repetition statement.
+     * @param response Compact response sent by the server
+     * @return An array with the anonymized text, the number of occurrences and the repetition statement,
+     * or null if the response is malformed.
+     */
+    private static String[] parseCompactResponse(String response){
+        int countEnd = response.indexOf('\n');
+        int repetitionEnd = countEnd == -1 ? -1 : response.indexOf('\n', countEnd + 1);
+        if(repetitionEnd == -1){
+            return null;
+        }
+        String[] result = new String[3];
+        result[0] = response.substring(repetitionEnd + 1);
+        result[1] = response.substring(0, countEnd);
+        result[2] = response.substring(countEnd + 1, repetitionEnd);
+        return result;
     }
 
     /**
      * Receives a reliable packet from the specified host and port. The function first receives a packet and then sends
      * an acknowledgment.
-     * @param hostname The hostname or IP address of the sender.
+     * @param address  IP address of the sender.
      * @param port     The port number on which the message is being received.
-     * @return The received message if successful, or null if an error occurs during the reception.
+     * @return The number of bytes received (stored in receiveData), or (-1) if an error occurs during the reception.
      */
-    private String receiveReliablePacket(String hostname, int port) {
-        String received = null;
+    private int receiveReliablePacket(InetAddress address, int port) {
         try{
-            InetAddress address = InetAddress.getByName(hostname);
-            received = receivePacket();
-            sendPacket("ACK",address,port);
+            int length = receivePacket();
+            sendPacket(ackBytes,ackBytes.length,address,port);
+            return length;
 
         }catch(SocketTimeoutException e){
-            System.err.println("Timeout reached: " + e.getMessage());
+            if(!quiet){
+                System.err.println("Timeout reached: " + e.getMessage());
+            }
         }catch (IOException e){
-            System.err.println("I/O error: " + e.getMessage());
+            if(!quiet){
+                System.err.println("I/O error: " + e.getMessage());
+            }
         }
-        return received;
+        return -1;
     }
 
     /**
-     *Receives a datagram packet from udpSocket. Constructs a new String message by decoding the receivedData byte array.
-     * Returns that received information;
-     * @return a string with the received message
+     * Receives a datagram packet from udpSocket into the receiveData byte array, reusing the same packet object.
+     * @return the number of bytes received
      * @throws IOException if an I/O error occurs.
      */
-    private String receivePacket() throws IOException {
-        DatagramPacket packet = new DatagramPacket(receiveData, receiveData.length);
-        udpSocket.receive(packet);
-        String received = new String(packet.getData(), 0, packet.getLength());
-        return received;
+    private int receivePacket() throws IOException {
+        receivePacket.setData(receiveData);
+        udpSocket.receive(receivePacket);
+        return receivePacket.getLength();
     }
 
     /**
@@ -217,7 +500,8 @@ public class client_java_udp {
     /**
      * The main method for the UDP client application. It prompts the user to enter server details,
      * a string, and a keyword. It then validates the input, including port number and hostname,
-     * creates a UDP client, sends messages to the server, and receives and prints the server's responses.
+     * creates a UDP client, sends messages to the server, and receives and prints the server's compact response,
+     * expanding the "Socket Programming" statement locally.
      * The program is interrupted if input data is invalid or any of the sending and receiving processes fail.
      */
 
@@ -261,40 +545,21 @@ public class client_java_udp {
 
         client_java_udp client = new client_java_udp(1000);
 
-        if(client.sendMessage(phrase,address,port) == -1){
-            client.close();
-            System.exit(1);
-        }
-
-        if(client.sendMessage(keyword,address,port) == -1) {
-            client.close();
-            System.exit(1);
-        }
-        //Receive anonymized message
-        String received = client.receiveMessage(hostname,port);
+        //Send phrase and keyword, and receive the compact response
+        String[] received = client.requestAnonymization(phrase,keyword,address,port);
         if(received == null){
             client.close();
             System.exit(1);
         }
-        System.out.println(received);
+        System.out.println(received[0]);
 
-        //Receive number o times client will send "Socket Programming"
-        received = client.receiveMessage(hostname,port);
-        if(received == null){
-            client.close();
-            System.exit(1);
-        }
-        int repeat = Integer.parseInt(received);
-
-        //Receive "Socket Programming" statement
+        //Expand the "Socket Programming" statement locally, as many times as the keyword was found
+        int repeat = Integer.parseInt(received[1]);
+        StringBuilder repetitions = new StringBuilder();
         for(int i = 0; i < repeat; i++){
-            received = client.receiveMessage(hostname,port);
-            if(received == null){
-                client.close();
-                System.exit(1);
-            }
-            System.out.println(received);
+            repetitions.append(received[2]).append(System.lineSeparator());
         }
+        System.out.print(repetitions);
         client.close();
     }
 
@@ -1,28 +1,81 @@
 package org.example.udp;
-import org.example.anonymizedService.anonymize_Service;
+import org.example.anonymizedService.anonymize_Byte_Service;
+import org.example.anonymizedService.diff_Spans;
+import org.example.anonymizedService.request_Options;
+import org.example.anonymizedService.term_Dictionary;
+import org.example.capture.capture_Record;
+import org.example.capture.capture_Writer;
+import org.example.limiter.rate_Limiter;
+import org.example.logging.async_Log;
+import org.example.monitoring.udp_Request_Event;
+import org.example.monitoring.udp_Send_Event;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * UDP/IP server that sends back an anonymized message, depending on the client's input.
  * This message may have to be sent in several parts, depending on the buffer length of the datagram packets.
  * In order to correctly run the program, the server port must be passed as a command-line argument.
  * For every message to be sent, the server first informs the client about the number of packets it should receive.
- * Only after this operation, the proper message is sent (in several packets, as needed).
+ * Only after this operation, the proper message is sent (in several packets, as needed), each packet carrying its index.
  * Additionally, for every packet sent, an acknowledgment must be received before sending the next one.
  * Transmission will fail after 3 attempts to send the same packet, without any feedback from the client.
  * Any client information stored by the server will be deleted.
+ * Small requests may instead arrive in one single datagram (see udp_FastPath), which is answered with one single
+ * datagram when the result fits, or with a reliable compact message otherwise. Answers are cached by request id, so a
+ * retransmitted request is answered again without being handled twice.
+ * Optionally, when started with -Danonymizer.capture=&lt;file&gt;, every request is recorded in a capture log.
+ * Optionally, when started with -Danonymizer.rateLimit.requests and/or -Danonymizer.rateLimit.bytes, every client
+ * address is limited to that many requests and bytes per second (see rate_Limiter). Announcements over the limit are
+ * dropped without acknowledgment, before any fragment is received; if the client's phrase was already received, it is
+ * discarded along with the request.
+ * A phrase whose keyword does not arrive within 5 seconds is discarded as well, as its client gave up.
+ * Optionally, when started with -Danonymizer.dictionary=&lt;file&gt;, every word found in that dictionary of sensitive
+ * terms is anonymized as well (see term_Dictionary and dictionary_Compiler).
+ * Every request and every slow reliable packet is reported to Java Flight Recorder (udp_Request_Event,
+ * udp_Send_Event), with the time spent in each phase and the retransmissions, whenever a recording is running.
+ * Messages about connections, timeouts and failures are logged asynchronously (see async_Log), so that a slow console
+ * never slows the server down.
  */
 
 public class server_java_udp {
     private DatagramSocket udpSocket;
-    private byte[] receiveData = new byte[bufferLength];
-    private byte[] sendData = new byte[bufferLength];
     private static int bufferLength = 20;
-    private HashMap<String,String> clientMap = new HashMap<>();
+    private static final int fastResponseCacheSize = 1024;
+    private static final int foreignSender = -2;
+    private static final long abandonedNanos = TimeUnit.SECONDS.toNanos(5);
+    private byte[] receiveData = new byte[Math.max(udp_FastPath.maximumDatagram, udp_Reassembler.headerLength + bufferLength)];
+    private byte[] sendData = new byte[udp_Reassembler.headerLength + bufferLength];
+    private final DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+    private final udp_Reassembler reassembler = new udp_Reassembler(bufferLength);
+    private byte[] responseData = new byte[256];
+    private HashMap<String,client_Message> clientMap = new HashMap<>();
+    private final LinkedHashMap<String,byte[]> fastResponses = new LinkedHashMap<String,byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,byte[]> eldest) {
+            return size() > fastResponseCacheSize;
+        }
+    };
+    private final capture_Writer capture = capture_Writer.fromSystemProperty();
+    private final rate_Limiter limiter = rate_Limiter.fromSystemProperty();
+    private final anonymize_Byte_Service anonymizeService =
+            new anonymize_Byte_Service(term_Dictionary.fromSystemProperty());
+    private final diff_Spans spans = new diff_Spans();
+    private int retransmissions;
+    private long nextExpiryNanos = System.nanoTime() + abandonedNanos;
+    private static final byte[] repetitionBytes = "Socket Programming".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ackBytes = "ACK".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] pingBytes = "Ping".getBytes(StandardCharsets.UTF_8);
 
     /**
      * Starts the UDPServer, binding it to the specified port
@@ -31,6 +84,7 @@ public class server_java_udp {
     server_java_udp(int port){
         udpSocket = null;
 
+        reassembler.recordTimings(capture != null);
         try{
             udpSocket = new DatagramSocket(port);
             System.out.println("Server listening on port: " + udpSocket.getLocalPort());
@@ -45,233 +99,665 @@ public class server_java_udp {
      * On a first client attempt: Saves the message in a map, to map all client's information.
      * On a second client attempt: Receives a keyword and anonymizes the message stored for the corresponding client.
      * 1) Successful case: Handles the message to be anonymized and sends it back, followed by the message "Socket Programming"
-     * as many times as the chosen keyword is present in the original message.
+     * as many times as the chosen keyword is present in the original message. If the keyword's announcement asked for a
+     * compact response, the anonymized message, the count and the statement are sent together in one single message.
      * 2) Unsuccessful case: At any point, if server does not receive an acknowledgment after trying to send the same
      * message for 3 consecutive times, it will print "Result transmission failed. Terminating!".
      */
     public void waitPackets(){
         while (true) {
             try{
-                String[] received = receiveMessage();
+                expireAbandoned();
+                client_Message received = receiveMessage();
                 if(received == null) {
-                    System.out.println("Did not receive valid string from client. Terminating!");
+                    async_Log.info("Did not receive valid string from client. Terminating!");
                     continue;
                 }
 
-                String hostname        = received[0];
-                int remotePort         = Integer.parseInt(received[1]);
-                String message         = received[2];
-                InetAddress remoteAddr = InetAddress.getByName(hostname);
+                int remotePort         = received.port;
+                InetAddress remoteAddr = received.address;
 
-                String client = remoteAddr.toString() + " - " + remotePort;
+                String client = clientKey(remoteAddr, remotePort);
 
                 //First registers the client in the map
                 if(clientMap.get(client) == null){
-                    clientMap.put(client,message);
+                    clientMap.put(client,received);
                 }else{
                     //When we already have an entry for that client, it means the message is already registered.
                     //In this case, keyword is received and sent along with the message to be anonymized.
-                    anonymize_Service anonymizeService = new anonymize_Service();
-                    String[] data = anonymizeService.stringAnonymizer(clientMap.get(client),message);
-                    boolean successfulDeliver = true;
-                    for(String singleString : data){
-                        if(sendMessage(singleString,remoteAddr,remotePort) == -1) {
-                            System.out.println("Result transmission failed. Terminating!");
-                            successfulDeliver = false;
-                            break;
-                        }
+                    client_Message phrase = clientMap.remove(client);
+                    long sequence = -1;
+                    if(capture != null){
+                        sequence = capture.captureRequest(capture_Record.udp, phrase.startNanos, phrase.message,
+                                received.message, concatenate(phrase.fragmentNanos, received.fragmentNanos));
                     }
-                    if(successfulDeliver){
-                        int repetitions = Integer.parseInt(data[1]);
-                        for(int i = 0; i < repetitions; i++) {
-                            if (sendMessage("Socket Programming", remoteAddr, remotePort) == -1) {
-                                System.out.println("Result transmission failed. Terminating!");
-                                break;
-                            }
-                        }
+                    respond(phrase, received);
+                    if(capture != null){
+                        capture.captureResponse(sequence, System.nanoTime() - phrase.startNanos);
                     }
-                    clientMap.remove(client);
                 }
 
             }catch(SocketException e){
-                System.err.println("Socket error: " + e.getMessage());
-            }catch(IOException e) {
-                System.err.println("I/O error: " + e.getMessage());
+                async_Log.error("Socket error: " + e.getMessage());
             }
         }
     }
 
     /**
-     * The function first receives a reliable packets (ACKnowledge) and stores it in array. That array contains the message,
-     * the sending host and port. First receives total number of fragments to be received. Then, it proceeds
-     * to receive and concatenate each fragment until the complete message is reconstructed.
-     * @return The reconstructed message if successful and returns array with information
-     * or null if an error occurs during the reception or if the received message does not
-     * contain the expected fragment information.
-     * @throws SocketException In case server waits for a message for more than 500 milliseconds.
+     * Discards the phrase registered for a client, if any, and gives its reassembly buffer back to the pool.
+     * @param client Key of the client in the client map
+     */
+    private void discardPending(String client){
+        client_Message pending = clientMap.remove(client);
+        if(pending != null){
+            reassembler.release(pending.message);
+        }
+    }
+
+    /**
+     * Discards every phrase registered for more than 5 seconds: its client gave up on the request before its keyword
+     * arrived (its keyword was lost, or it stopped retrying it), and keeping it would pair the client's next phrase
+     * with it. Checks at most once every 5 seconds.
+     */
+    private void expireAbandoned(){
+        long now = System.nanoTime();
+        if(now - nextExpiryNanos < 0){
+            return;
+        }
+        nextExpiryNanos = now + abandonedNanos;
+        Iterator<client_Message> pending = clientMap.values().iterator();
+        while(pending.hasNext()){
+            client_Message phrase = pending.next();
+            if(now - phrase.receivedNanos > abandonedNanos){
+                pending.remove();
+                reassembler.release(phrase.message);
+            }
+        }
+    }
+
+    /**
+     * @return Key of a client in the client map
+     */
+    private static String clientKey(InetAddress address, int port){
+        return address.toString() + " - " + port;
+    }
+
+    /**
+     * Anonymizes the phrase registered for a client with the keyword it just sent, and sends the result back.
+     * The phrase is anonymized in place, in its reassembly buffer, and sent back from that same array. Both reassembly
+     * buffers are given back to the pool afterwards.
+     * If the keyword's announcement asked for a compact response, count, statement and anonymized text travel
+     * together in one reliable message; otherwise each of them is sent as a message of its own.
+     * If the keyword carries the "diff" option, the masked spans are sent instead of the anonymized text (see
+     * diff_Spans).
+     * @param phraseMessage First message of the client, holding the phrase
+     * @param keywordMessage Second message of the client, holding the keyword
+     * @throws SocketException In case server waits for an ACK for more than 1000 milliseconds.
+     */
+    private void respond(client_Message phraseMessage, client_Message keywordMessage) throws SocketException {
+        udp_Request_Event event = new udp_Request_Event();
+        event.begin();
+        long anonymizeStart = System.nanoTime();
+        InetAddress remoteAddr = keywordMessage.address;
+        int remotePort = keywordMessage.port;
+        ByteBuffer phrase = phraseMessage.message;
+        int requestBytes = phrase.limit() + keywordMessage.message.limit();
+        request_Options options = request_Options.parse(keywordMessage.message, 0, keywordMessage.message.limit());
+        int[] keyword = anonymize_Byte_Service.keywordCodePoints(keywordMessage.message, 0, options.getKeywordEnd());
+        reassembler.release(keywordMessage.message);
+        diff_Spans requestSpans = requestSpans(options);
+        int repetitions = anonymizeService.byteAnonymizer(phrase, keyword, options.getRules(), requestSpans);
+        long sendStart = System.nanoTime();
+        int retransmissionsBefore = retransmissions;
+
+        if(keywordMessage.compact){
+            int responseLength = compactResponse(phrase, requestSpans, repetitions, 0);
+            reassembler.release(phrase);
+            if(sendMessage(responseData,responseLength,remoteAddr,remotePort) == -1){
+                async_Log.info("Result transmission failed. Terminating!");
+            }
+        }else{
+            boolean successfulDeliver = true;
+            byte[] text = phrase.array();
+            int textLength = phrase.limit();
+            if(requestSpans != null){
+                text = responseData = grow(responseData, requestSpans.encodedLength());
+                textLength = requestSpans.writeTo(text, 0);
+            }
+            if(sendMessage(text,textLength,remoteAddr,remotePort) == -1
+                    || sendMessage(Integer.toString(repetitions),remoteAddr,remotePort) == -1) {
+                async_Log.info("Result transmission failed. Terminating!");
+                successfulDeliver = false;
+            }
+            reassembler.release(phrase);
+            if(successfulDeliver){
+                for(int i = 0; i < repetitions; i++) {
+                    if (sendMessage(repetitionBytes, repetitionBytes.length, remoteAddr, remotePort) == -1) {
+                        async_Log.info("Result transmission failed. Terminating!");
+                        break;
+                    }
+                }
+            }
+        }
+        commitRequest(event, anonymizeStart - phraseMessage.startNanos, anonymizeStart, sendStart, requestBytes,
+                repetitions, retransmissions - retransmissionsBefore, false);
+    }
+
+    /**
+     * Completes the flight recorder event of a request whose response was just sent, if it is being recorded.
+     * @param event Event of the request, begun once the request was received
+     * @param receiveNanos Time taken to receive the request
+     * @param anonymizeStart When anonymization started
+     * @param sendStart When sending the response started
+     * @param requestBytes Number of bytes of the phrase and keyword
+     * @param occurrences Number of anonymized words
+     * @param retransmitted Number of packets retransmitted while sending the response
+     * @param fastPath true if the request came through the fast path
+     */
+    private void commitRequest(udp_Request_Event event, long receiveNanos, long anonymizeStart, long sendStart,
+                               int requestBytes, int occurrences, int retransmitted, boolean fastPath){
+        long now = System.nanoTime();
+        event.end();
+        if(event.shouldCommit()){
+            event.receiveNanos = receiveNanos;
+            event.anonymizeNanos = sendStart - anonymizeStart;
+            event.sendNanos = now - sendStart;
+            event.requestBytes = requestBytes;
+            event.occurrences = occurrences;
+            event.retransmissions = retransmitted;
+            event.fastPath = fastPath;
+            event.commit();
+        }
+    }
+
+    /**
+     * Handles a fast path request, held by the datagram just received (see udp_FastPath).
+     * (1.) If the request id was already answered, sends the cached answer again: the client retransmitted the request
+     * because the answer was lost. Answers sent as reliable messages are not sent again, as the client stops
+     * retransmitting as soon as their announcement arrives.
+     * (2.) Drops the request if its sender exceeded its rate limits.
+     * (3.) Anonymizes the phrase in place, in the receive buffer, with the keyword and its options (recording the
+     * masked spans for a "diff" response).
+     * (4.) Sends the compact response in one single datagram if it fits, caching it; otherwise, sends it as a reliable
+     * compact message.
+     * @param length Number of bytes of the request
+     * @throws SocketException In case server waits for an ACK for more than 1000 milliseconds.
+     */
+    private void respondFast(int length) throws SocketException {
+        long startNanos = System.nanoTime();
+        InetAddress address = receivePacket.getAddress();
+        int port = receivePacket.getPort();
+        long id = udp_FastPath.requestId(receiveData);
+        int phraseLength = udp_FastPath.phraseLength(receiveData, length);
+        if(phraseLength == -1){
+            async_Log.info("Did not receive valid string from client. Terminating!");
+            return;
+        }
+        // 1.
+        String key = clientKey(address, port) + " #" + id;
+        if(fastResponses.containsKey(key)){
+            byte[] cached = fastResponses.get(key);
+            if(cached != null){
+                sendFastResponse(address, port, cached, cached.length);
+            }
+            return;
+        }
+        // 2.
+        if(limiter != null && !limiter.tryAcquire(address, 1, length)){
+            return;
+        }
+
+        // 3.
+        udp_Request_Event event = new udp_Request_Event();
+        event.begin();
+        long anonymizeStart = System.nanoTime();
+        int keywordStart = udp_FastPath.requestHeaderLength + phraseLength;
+        ByteBuffer phrase = ByteBuffer.wrap(receiveData, udp_FastPath.requestHeaderLength, phraseLength);
+        long sequence = -1;
+        if(capture != null){
+            sequence = capture.captureRequest(capture_Record.udp, startNanos, phrase,
+                    ByteBuffer.wrap(receiveData, keywordStart, length - keywordStart), null);
+        }
+        request_Options options = request_Options.parse(ByteBuffer.wrap(receiveData), keywordStart, length);
+        int[] keyword = anonymize_Byte_Service.keywordCodePoints(ByteBuffer.wrap(receiveData), keywordStart,
+                options.getKeywordEnd());
+        diff_Spans requestSpans = requestSpans(options);
+        int repetitions = anonymizeService.byteAnonymizer(phrase, keyword, options.getRules(), requestSpans);
+
+        // 4.
+        long sendStart = System.nanoTime();
+        int retransmissionsBefore = retransmissions;
+        int responseLength = compactResponse(phrase, requestSpans, repetitions, udp_FastPath.responseHeaderLength);
+        if(responseLength <= udp_FastPath.maximumDatagram){
+            udp_FastPath.writeHeader(responseData, id);
+            fastResponses.put(key, Arrays.copyOf(responseData, responseLength));
+            sendFastResponse(address, port, responseData, responseLength);
+        }else{
+            fastResponses.put(key, null);
+            int bodyLength = responseLength - udp_FastPath.responseHeaderLength;
+            System.arraycopy(responseData, udp_FastPath.responseHeaderLength, responseData, 0, bodyLength);
+            if(sendMessage(responseData, bodyLength, address, port) == -1){
+                async_Log.info("Result transmission failed. Terminating!");
+            }
+        }
+        commitRequest(event, 0, anonymizeStart, sendStart, length - udp_FastPath.requestHeaderLength, repetitions,
+                retransmissions - retransmissionsBefore, true);
+        if(capture != null){
+            capture.captureResponse(sequence, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Sends a single-datagram answer to a fast path request. Delivery is not acknowledged: if the answer is lost, the
+     * client retransmits its request and gets it again from the cache.
+     * @param address IP address of the UDP client
+     * @param port Port where UDP client is running
+     * @param response Buffer holding the answer
+     * @param length Number of bytes of the answer
+     */
+    private void sendFastResponse(InetAddress address, int port, byte[] response, int length){
+        try{
+            sendPacket(address, port, response, 0, length);
+        }catch (IOException e){
+            async_Log.error("I/O error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Joins the fragment arrival times of the phrase and of the keyword, for capture mode.
+     * @param first Arrival times of the phrase's fragments, or null
+     * @param second Arrival times of the keyword's fragments, or null
+     * @return Both arrays one after the other, or null if none was recorded
      */
-    private String[] receiveMessage() throws SocketException {
-        String[] received = receiveReliablePacket();
-        String message = received[2];
+    private static long[] concatenate(long[] first, long[] second){
+        if(first == null || second == null){
+            return first == null ? second : first;
+        }
+        long[] joined = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
 
-        if (!message.contains("Packets: ")){
+    /**
+     * @return The cleared spans to be recorded for a request, or null if it did not ask for the "diff" option
+     */
+    private diff_Spans requestSpans(request_Options options){
+        if(!options.isDiff()){
             return null;
         }
-        // Split the string by colon
-        String[] parts = message.split(":");
-        if (parts.length < 2){
+        spans.clear();
+        return spans;
+    }
+
+    /**
+     * @return The given array, or a larger one (without its content) if it is shorter than the given length
+     */
+    private static byte[] grow(byte[] array, int length){
+        return array.length < length ? new byte[Math.max(length, array.length * 2)] : array;
+    }
+
+    /**
+     * Builds a compact response in responseData: the number of occurrences and the "Socket Programming" statement,
+     * each followed by a line break, and then the anonymized text, or its masked spans for a "diff" response.
+     * The client expands the statement locally.
+     * @param anonymized Anonymized text, from its position up to its limit
+     * @param spans Masked spans, to be sent instead of the anonymized text, or null
+     * @param repetitions Number of occurrences of the keyword
+     * @param offset Index of responseData where the response starts (room left for a header)
+     * @return Index right after the last byte of the response
+     */
+    private int compactResponse(ByteBuffer anonymized, diff_Spans spans, int repetitions, int offset){
+        byte[] count = Integer.toString(repetitions).getBytes(StandardCharsets.UTF_8);
+        int bodyLength = spans != null ? spans.encodedLength() : anonymized.remaining();
+        int length = offset + count.length + 1 + repetitionBytes.length + 1 + bodyLength;
+        responseData = grow(responseData, length);
+        int position = offset;
+        System.arraycopy(count, 0, responseData, position, count.length);
+        position += count.length;
+        responseData[position++] = '\n';
+        System.arraycopy(repetitionBytes, 0, responseData, position, repetitionBytes.length);
+        position += repetitionBytes.length;
+        responseData[position++] = '\n';
+        if(spans != null){
+            return spans.writeTo(responseData, position);
+        }
+        System.arraycopy(anonymized.array(), anonymized.arrayOffset() + anonymized.position(), responseData, position,
+                anonymized.remaining());
+        return position + anonymized.remaining();
+    }
+
+    /**
+     * The function first receives a reliable packet (ACKnowledge) holding the total number of fragments to be received.
+     * Health-check pings ("Ping") received meanwhile are only acknowledged, and fast path requests are answered on the
+     * spot (see respondFast). Announcements from clients over their rate limit are dropped without acknowledgment, so
+     * they cost neither an ACK nor a reassembly, and the phrase already received for their request, if any, is
+     * discarded. Any other packet is a leftover of an earlier exchange (e.g. a late ACK
+     * or fragment) and is dropped as well: acknowledging it would start an endless exchange of ACKs with a client
+     * still waiting for fragments.
+     * Then, it proceeds to receive each fragment from the same client and hands it to the reassembler, which places it
+     * by its index, until the complete message is reconstructed. Packets from other clients are not acknowledged, so
+     * they will be retransmitted later, except for pings, which are acknowledged as usual; none of them counts as a
+     * timeout. Reception is abandoned after 3 consecutive timeouts, along with the phrase already received from the
+     * same client, if any.
+     * @return The reconstructed message, along with the sending address and port, or null if an error occurs during the
+     * reception or if the received message does not contain the expected fragment information.
+     * @throws SocketException In case server waits for a message for more than 500 milliseconds.
+     */
+    private client_Message receiveMessage() throws SocketException {
+        int length;
+        while (true) {
+            length = receiveFrom(null, 0);
+            if (length == -1){
+                return null;
+            }
+            if (isPing(length)){
+                acknowledge();
+            } else if (udp_FastPath.isFast(receiveData, length)){
+                respondFast(length);
+            } else if (udp_Reassembler.parseAnnouncement(receiveData, 0, length) != -1){
+                if (!isRateLimited(length)){
+                    acknowledge();
+                    break;
+                }
+                discardPending(clientKey(receivePacket.getAddress(), receivePacket.getPort()));
+            }
+        }
+        long startNanos = System.nanoTime();
+        InetAddress address = receivePacket.getAddress();
+        int port = receivePacket.getPort();
+
+        int numberFragments = udp_Reassembler.parseAnnouncement(receiveData, 0, length);
+        if (numberFragments == -1 || !reassembler.begin(numberFragments)){
             return null;
         }
-        int numberFragments = Integer.parseInt(parts[1].trim());
+        boolean compact = udp_Reassembler.isCompactAnnouncement(receiveData, 0, length);
 
-        String finalMessage = "";
         udpSocket.setSoTimeout(500);
-        for(int i = 0; i < numberFragments; i++) {
-            String splitMessage = receiveReliablePacket()[2];
-            finalMessage = String.join("", finalMessage, splitMessage);
+        int timeouts = 0;
+        while(!reassembler.isComplete()) {
+            length = receiveReliablePacket(address, port);
+            if (length == foreignSender){
+                if (isPing(receivePacket.getLength())){
+                    acknowledge();
+                }
+                continue;
+            }
+            if (length == -1){
+                if (++timeouts == 3){
+                    reassembler.abort();
+                    discardPending(clientKey(address, port));
+                    udpSocket.setSoTimeout(0);
+                    return null;
+                }
+                continue;
+            }
+            timeouts = 0;
+            reassembler.place(receiveData, 0, length);
         }
-        received[2] = finalMessage;
         udpSocket.setSoTimeout(0);
-        return received;
+        long[] fragmentNanos = capture != null ? reassembler.fragmentTimes() : null;
+        return new client_Message(address, port, reassembler.complete(), compact, startNanos, fragmentNanos);
 
     }
 
     /**
-     * Stores the received information returned by receivePacket() function
-     *  which includes information about the sender's hostname, port, and the message content.
-     *  After receiving that information packet, it sends an acknowledgment (ACK) packet back to the client.
+     * Checks the announcement just received against the sender's rate limits. The announcement starting a request
+     * (no phrase registered yet for the client) counts as a request; every announcement counts its payload bytes.
+     * @param length Number of bytes of the announcement
+     * @return true if the sender exceeded its limits and the announcement must be dropped
+     */
+    private boolean isRateLimited(int length) {
+        if(limiter == null){
+            return false;
+        }
+        InetAddress address = receivePacket.getAddress();
+        int requests = clientMap.containsKey(clientKey(address, receivePacket.getPort())) ? 0 : 1;
+        long bytes = (long) Math.max(0, udp_Reassembler.parseAnnouncement(receiveData, 0, length)) * bufferLength;
+        return !limiter.tryAcquire(address, requests, bytes);
+    }
+
+    /**
+     * Receives a packet with receiveFrom() and, if it comes from the expected sender, sends an acknowledgment (ACK)
+     * packet back to it.
+     *
+     * @param expectedAddress Address the packet must come from, or null to accept packets from any client
+     * @param expectedPort    Port the packet must come from (ignored when expectedAddress is null)
+     * @return The number of bytes received (stored in receiveData), (-1) on timeout or I/O error, or (-2) if the packet
+     * came from another sender (it is then left unacknowledged)
+     */
+    private int receiveReliablePacket(InetAddress expectedAddress, int expectedPort) {
+        int length = receiveFrom(expectedAddress, expectedPort);
+        if(length < 0){
+            return length;
+        }
+        if(!acknowledge()){
+            return -1;
+        }
+        return length;
+    }
+
+    /**
+     * Receives a packet with receivePacket(), without acknowledging it.
      *
-     * @return An array containing information about the received packet: hostname, port, and the message content.
+     * @param expectedAddress Address the packet must come from, or null to accept packets from any client
+     * @param expectedPort    Port the packet must come from (ignored when expectedAddress is null)
+     * @return The number of bytes received (stored in receiveData), (-1) on timeout or I/O error, or (-2) if the packet
+     * came from another sender (its length stays available in receivePacket)
      */
-    private String[] receiveReliablePacket() {
-        String[] received = new String[3];
+    private int receiveFrom(InetAddress expectedAddress, int expectedPort) {
         try{
-            received = receivePacket();
-            String hostname = received[0];
-            int port = Integer.parseInt(received[1]);
-            InetAddress address = InetAddress.getByName(hostname);
-            sendPacket(address,port,"ACK");
+            int length = receivePacket();
+            if(expectedAddress != null && (!expectedAddress.equals(receivePacket.getAddress())
+                    || expectedPort != receivePacket.getPort())){
+                return foreignSender;
+            }
+            return length;
 
         }catch(SocketTimeoutException e){
-            System.err.println("Timeout reached: " + e.getMessage());
+            async_Log.error("Timeout reached: " + e.getMessage());
         }catch (IOException e){
-            System.err.println("I/O error: " + e.getMessage());
+            async_Log.error("I/O error: " + e.getMessage());
         }
-        return received;
+        return -1;
     }
 
     /**
-     * Receives a DatagramPacket from the UDP socket, extracts information about the sender's hostname, port,
-     * and the message content, and returns this information as an array.
+     * Sends an acknowledgment (ACK) packet to the sender of the last received packet.
+     * @return true if the acknowledgment was sent
+     */
+    private boolean acknowledge() {
+        try{
+            sendPacket(receivePacket.getAddress(),receivePacket.getPort(),ackBytes,0,ackBytes.length);
+            return true;
+        }catch (IOException e){
+            async_Log.error("I/O error: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Receives a DatagramPacket from the UDP socket into receiveData. The sender's address and port stay available
+     * in receivePacket, which is reused for every reception.
      *
-     * @return An array containing information about the received packet: hostname, port, and the message content.
+     * @return The number of bytes received.
      * @throws IOException If an I/O error occurs during the packet reception.
      */
-    private String[] receivePacket() throws IOException {
-        DatagramPacket packet = new DatagramPacket(receiveData, receiveData.length);
-        udpSocket.receive(packet);
-        String[] received = new String[3];
-        received[0] = packet.getAddress().getHostAddress();
-        received[1] = Integer.toString(packet.getPort());
-        received[2] = new String(packet.getData(), 0, packet.getLength());
-        return received;
+    private int receivePacket() throws IOException {
+        receivePacket.setData(receiveData);
+        udpSocket.receive(receivePacket);
+        return receivePacket.getLength();
     }
 
     /**
-     * Determining the total number of packets required for sending/reconstructing the original message and then
-     * storing an array of chunks of data from the provided message.
-     * The process involves transmitting the count of fragments first, followed by the transmission of the fragmented message.
-     * Every sending process is made in a reliable way.
+     * Encodes a message in UTF-8 and sends it reliably (see sendMessage for byte arrays).
      * @param message Message to be sent
-     * @param address IP address of the UDP server
-     * @param port  Port where UDP server is running
+     * @param address IP address of the UDP client
+     * @param port  Port where UDP client is running
      * @return (-1) if string or number of fragments sending failed; (0) if sending was successful
      * @throws SocketException In case server waits for an ACK for more than 1000 milliseconds.
      */
     private int sendMessage(String message, InetAddress address, int port) throws SocketException {
-        //Calculate number of fragments, in case buffer length is lower than the message length
-        int messageLength = message.length();
-        int numberOfFragments = (int) Math.ceil((double) messageLength / bufferLength);
-        String[] fragmentedMessage = divideMessage(message,numberOfFragments);
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        return sendMessage(bytes, bytes.length, address, port);
+    }
 
-        if(sendReliablePacket("Packets: " + numberOfFragments,address,port) == -1){
-            return -1;
-        }
+    /**
+     * Determining the total number of packets required for sending/reconstructing the original message.
+     * The process involves transmitting the count of fragments first, followed by the transmission of the fragmented
+     * message. Each fragment carries its index, so that the client can place it in its reassembly buffer.
+     * Every sending process is made in a reliable way.
+     * @param message UTF-8 encoded message to be sent
+     * @param length Number of bytes of the message
+     * @param address IP address of the UDP client
+     * @param port  Port where UDP client is running
+     * @return (-1) if string or number of fragments sending failed; (0) if sending was successful
+     * @throws SocketException In case server waits for an ACK for more than 1000 milliseconds.
+     */
+    private int sendMessage(byte[] message, int length, InetAddress address, int port) throws SocketException {
+        int numberOfFragments = udp_Reassembler.numberOfFragments(length, bufferLength);
+
+        byte[] announcement = ("Packets: " + numberOfFragments).getBytes(StandardCharsets.UTF_8);
         udpSocket.setSoTimeout(1000);
-        for(int i = 0; i < numberOfFragments; i++){
-            if(sendReliablePacket(fragmentedMessage[i],address,port) == -1){
+        try{
+            if(sendReliablePacket(announcement,announcement.length,address,port) == -1){
                 return -1;
             }
+            for(int i = 0; i < numberOfFragments; i++){
+                int fragmentLength = udp_Reassembler.writeFragment(message,length,i,bufferLength,sendData);
+                if(sendReliablePacket(sendData,fragmentLength,address,port) == -1){
+                    return -1;
+                }
+            }
+            return 0;
+        }finally{
+            udpSocket.setSoTimeout(0);
         }
-        udpSocket.setSoTimeout(0);
-        return 0;
-    }
-
-    /**
-     * Dividing the provided message into fragments, the size of each determined by the buffer size,
-     * @param message Message to be sent
-     * @param numberOfFragments number of fragments in which the message should be divided
-     * @return an array of the fragmented message.
-     */
-    private String[] divideMessage(String message, int numberOfFragments){
-        String[] fragments = new String[numberOfFragments];
-        if(numberOfFragments == 1){
-            fragments[0] = message;
-            return fragments;
-        }
-        for(int i = 0; i < numberOfFragments; i++){
-            int start = i * bufferLength;
-            int end = Math.min((i + 1) * bufferLength, message.length());
-            fragments[i] = message.substring(start,end);
-        }
-        return fragments;
     }
 
     /**
      * Sends the received message to the indicated address and port. If message send is acknowledged by the client the function returns 1
      * if not it retries sending two more times. If message is not acknowledged by the third time, the function exits and returns (-1)
-     *  @param message  Message to be sent
+     *  @param message  Buffer holding the message to be sent
+     *  @param length   Number of bytes of the message
      *  @param address  IP address of the UDP client
      *  @param port     Port where UDP client is running
      * @return (-1) if string or number of fragments sending failed; (0) if sending was successful;
      */
-    private int sendReliablePacket(String message, InetAddress address, int port) {
+    private int sendReliablePacket(byte[] message, int length, InetAddress address, int port) {
+        udp_Send_Event event = new udp_Send_Event();
+        event.begin();
         int counter = 0;
-        String received = "NONE";
-        while (!received.equals("ACK") && counter < 3) {
+        boolean acknowledged = false;
+        while (!acknowledged && counter < 3) {
             counter++;
+            if(counter > 1){
+                retransmissions++;
+            }
             try{
-                    sendPacket(address,port,message);
-                    received = receivePacket()[2];
+                    sendPacket(address,port,message,0,length);
+                    acknowledged = awaitAck(address,port);
 
             }catch(SocketTimeoutException e){
-                System.err.println("Timeout reached: " + e.getMessage());
+                async_Log.error("Timeout reached: " + e.getMessage());
             }catch (IOException e) {
-                System.err.println("I/O error: " + e.getMessage());
+                async_Log.error("I/O error: " + e.getMessage());
             }
         }
 
+        event.end();
+        if(event.shouldCommit()){
+            event.packetBytes = length;
+            event.attempts = counter;
+            event.acknowledged = acknowledged;
+            event.commit();
+        }
+
         //To validate if the message was successfully sent:
-        if(counter == 3){
-            System.out.println("Failed to send string. Terminating!");
+        if(!acknowledged){
+            async_Log.info("Failed to send string. Terminating!");
             return -1;
         }
         return 0;
     }
 
     /**
-     * Extracts message bytes and stores them in a byte array. Then sends that information using a DatagramPacket.
-     * @param message  Message to be sent
+     * Waits for the client's answer to a packet just sent. Pings from other senders received meanwhile are
+     * acknowledged, and anything else they send is ignored, so that they never count as a missing acknowledgment.
+     * @param address IP address of the UDP client
+     * @param port Port where UDP client is running
+     * @return true if the client answered with an acknowledgment
+     * @throws IOException If nothing comes from the client within the socket timeout, or on an I/O error
+     */
+    private boolean awaitAck(InetAddress address, int port) throws IOException {
+        while (true) {
+            int length = receivePacket();
+            if (address.equals(receivePacket.getAddress()) && port == receivePacket.getPort()) {
+                return isAck(length);
+            }
+            if (isPing(length)) {
+                acknowledge();
+            }
+        }
+    }
+
+    /**
+     * Checks whether the last received packet is an acknowledgment, comparing its bytes with "ACK".
+     * @param length Number of bytes received
+     * @return true if the packet is "ACK"
+     */
+    private boolean isAck(int length) {
+        return length == ackBytes.length
+                && receiveData[0] == ackBytes[0] && receiveData[1] == ackBytes[1] && receiveData[2] == ackBytes[2];
+    }
+
+    /**
+     * Checks whether the last received packet is a health-check ping, comparing its bytes with "Ping".
+     * @param length Number of bytes received
+     * @return true if the packet is "Ping"
+     */
+    private boolean isPing(int length) {
+        return length == pingBytes.length && Arrays.equals(receiveData, 0, length, pingBytes, 0, length);
+    }
+
+    /**
+     * Sends a slice of a byte array using a DatagramPacket, without copying it.
      * @param address  IP address of the UDP client
      * @param port     Port where UDP client is running
+     * @param message  Buffer holding the message to be sent
+     * @param offset   Index of the first byte to be sent
+     * @param length   Number of bytes to be sent
      * @throws IOException  if an I/O error occurs.
      */
-    private void sendPacket(InetAddress address, int port, String message) throws IOException {
-        sendData = message.getBytes();
-        DatagramPacket packet = new DatagramPacket(sendData, sendData.length, address, port);
+    private void sendPacket(InetAddress address, int port, byte[] message, int offset, int length) throws IOException {
+        DatagramPacket packet = new DatagramPacket(message, offset, length, address, port);
         udpSocket.send(packet);
     }
 
+    /**
+     * Message rebuilt by receiveMessage, along with the address and port of the client that sent it, whether its
+     * announcement asked for a compact response, when its announcement arrived, when it was complete and, in capture
+     * mode, when each of its fragments arrived.
+     */
+    private static class client_Message {
+        private final InetAddress address;
+        private final int port;
+        private final ByteBuffer message;
+        private final boolean compact;
+        private final long startNanos;
+        private final long receivedNanos = System.nanoTime();
+        private final long[] fragmentNanos;
+
+        private client_Message(InetAddress address, int port, ByteBuffer message, boolean compact, long startNanos,
+                               long[] fragmentNanos){
+            this.address = address;
+            this.port = port;
+            this.message = message;
+            this.compact = compact;
+            this.startNanos = startNanos;
+            this.fragmentNanos = fragmentNanos;
+        }
+    }
+
 
     /**
      * Creates a UDP DatagramSocket and establish the server to wait for client packets
@@ -0,0 +1,97 @@
+package org.example.udp;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the single-datagram ("fast path") requests and responses, used when a request is small enough to travel in
+ * one datagram, instead of two reliable messages with their announcements and acknowledged fragments.
+ * Request:  "FAST", request id (8 bytes), phrase length (2 bytes), phrase, keyword (UTF-8, up to the end).
+ * Response: "FAST", request id (8 bytes), compact response ("count\nSocket Programming\nanonymized text").
+ * Datagrams are kept within 508 bytes, the payload every IPv4 path is guaranteed to carry without fragmentation.
+ * The request id is chosen by the client and reused for its retransmissions, so the server can answer a retransmitted
+ * request from its cache instead of handling it again. A response that does not fit in one datagram is sent as a
+ * reliable compact message instead, as in the fragmented path.
+ */
+
+class udp_FastPath {
+    static final int maximumDatagram = 508;
+    static final int responseHeaderLength = 12;
+    static final int requestHeaderLength = 14;
+    private static final byte[] magic = "FAST".getBytes(StandardCharsets.UTF_8);
+
+    private udp_FastPath(){
+    }
+
+    /**
+     * @param phraseLength Number of bytes of the phrase
+     * @param keywordLength Number of bytes of the keyword
+     * @return true if the request fits in a single datagram
+     */
+    static boolean fits(int phraseLength, int keywordLength){
+        return requestHeaderLength + phraseLength + keywordLength <= maximumDatagram;
+    }
+
+    /**
+     * Writes a request datagram.
+     * @param datagram Buffer of at least maximumDatagram bytes
+     * @param id Request id
+     * @param phrase UTF-8 encoded phrase
+     * @param keyword UTF-8 encoded keyword
+     * @return Number of bytes of the datagram
+     */
+    static int writeRequest(byte[] datagram, long id, byte[] phrase, byte[] keyword){
+        writeHeader(datagram, id);
+        datagram[responseHeaderLength] = (byte) (phrase.length >>> 8);
+        datagram[responseHeaderLength + 1] = (byte) phrase.length;
+        System.arraycopy(phrase, 0, datagram, requestHeaderLength, phrase.length);
+        System.arraycopy(keyword, 0, datagram, requestHeaderLength + phrase.length, keyword.length);
+        return requestHeaderLength + phrase.length + keyword.length;
+    }
+
+    /**
+     * Writes the header of a response datagram; the compact response follows it.
+     * @param datagram Buffer holding the response
+     * @param id Id of the request being answered
+     */
+    static void writeHeader(byte[] datagram, long id){
+        System.arraycopy(magic, 0, datagram, 0, magic.length);
+        for (int i = 0; i < 8; i++) {
+            datagram[magic.length + i] = (byte) (id >>> (56 - 8 * i));
+        }
+    }
+
+    /**
+     * @param datagram Received datagram
+     * @param length Number of bytes received
+     * @return true if the datagram starts with the fast path header
+     */
+    static boolean isFast(byte[] datagram, int length){
+        return length >= responseHeaderLength && datagram[0] == magic[0] && datagram[1] == magic[1]
+                && datagram[2] == magic[2] && datagram[3] == magic[3];
+    }
+
+    /**
+     * @param datagram Received fast path datagram
+     * @return Its request id
+     */
+    static long requestId(byte[] datagram){
+        long id = 0;
+        for (int i = 0; i < 8; i++) {
+            id = (id << 8) | (datagram[magic.length + i] & 0xFF);
+        }
+        return id;
+    }
+
+    /**
+     * @param datagram Received fast path request
+     * @param length Number of bytes received
+     * @return Number of bytes of its phrase, or (-1) if the request is malformed
+     */
+    static int phraseLength(byte[] datagram, int length){
+        if (length < requestHeaderLength) {
+            return -1;
+        }
+        int phraseLength = ((datagram[responseHeaderLength] & 0xFF) << 8) | (datagram[responseHeaderLength + 1] & 0xFF);
+        return requestHeaderLength + phraseLength <= length ? phraseLength : -1;
+    }
+}
@@ -0,0 +1,285 @@
+package org.example.udp;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Rebuilds a message that was sent in several UDP fragments.
+ * Every fragment starts with a 4-byte header holding its index, followed by up to fragmentLength bytes of the message.
+ * Since all fragments except the last one are full, each one is copied straight to its final place (index times
+ * fragmentLength) in a byte array sized from the number of fragments announced by the sender. Fragments can therefore
+ * arrive in any order, and retransmitted duplicates are simply ignored.
+ * The message is only decoded, if ever, once every fragment has arrived.
+ * Byte arrays are pooled and reused for the following messages, so reassembly produces almost no garbage.
+ * Instances are not thread-safe: each socket owns its own reassembler.
+ */
+
+class udp_Reassembler {
+    static final int headerLength = 4;
+    private static final int maxMessageLength = 16 * 1024 * 1024;
+    private static final int poolSize = 8;
+    private static final byte[] announcementPrefix = "Packets: ".getBytes(StandardCharsets.UTF_8);
+    static final String compactSuffix = " Compact";
+    private static final byte[] compactFlag = compactSuffix.getBytes(StandardCharsets.UTF_8);
+
+    private final int fragmentLength;
+    private final ArrayDeque<byte[]> pool = new ArrayDeque<>();
+    private boolean[] receivedFragments = new boolean[16];
+    private long[] arrivalNanos = new long[16];
+    private boolean recordTimings;
+    private byte[] buffer;
+    private int expectedFragments;
+    private int receivedCount;
+    private int length;
+
+    /**
+     * Creates a reassembler for messages split in fragments of the given length.
+     * @param fragmentLength Number of message bytes carried by each fragment (header excluded)
+     */
+    udp_Reassembler(int fragmentLength){
+        this.fragmentLength = fragmentLength;
+    }
+
+    /**
+     * Parses an announcement of the form "Packets: N", sent before every fragmented message.
+     * Anything after the number (separated by a space) is ignored.
+     * @param data Buffer holding the received datagram
+     * @param offset Index of the first byte of the datagram
+     * @param length Number of bytes of the datagram
+     * @return Number of fragments announced, or (-1) if the datagram is not a valid announcement
+     */
+    static int parseAnnouncement(byte[] data, int offset, int length){
+        if (length <= announcementPrefix.length) {
+            return -1;
+        }
+        for (int i = 0; i < announcementPrefix.length; i++) {
+            if (data[offset + i] != announcementPrefix[i]) {
+                return -1;
+            }
+        }
+        long fragments = 0;
+        int i = offset + announcementPrefix.length;
+        int end = offset + length;
+        int digits = 0;
+        while (i < end && data[i] >= '0' && data[i] <= '9') {
+            fragments = fragments * 10 + (data[i] - '0');
+            if (fragments > Integer.MAX_VALUE) {
+                return -1;
+            }
+            i++;
+            digits++;
+        }
+        if (digits == 0 || (i < end && data[i] != ' ')) {
+            return -1;
+        }
+        return (int) fragments;
+    }
+
+    /**
+     * Checks whether an announcement asks for a compact response, i.e. whether it ends with the compact flag
+     * ("Packets: N Compact").
+     * @param data Buffer holding the received datagram
+     * @param offset Index of the first byte of the datagram
+     * @param length Number of bytes of the datagram
+     * @return true if the announcement carries the compact flag
+     */
+    static boolean isCompactAnnouncement(byte[] data, int offset, int length){
+        if (length < compactFlag.length) {
+            return false;
+        }
+        int start = offset + length - compactFlag.length;
+        for (int i = 0; i < compactFlag.length; i++) {
+            if (data[start + i] != compactFlag[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of fragments needed to send a message of the given length.
+     * @param messageLength Number of bytes of the message
+     * @param fragmentLength Number of message bytes carried by each fragment
+     * @return Number of fragments
+     */
+    static int numberOfFragments(int messageLength, int fragmentLength){
+        return (messageLength + fragmentLength - 1) / fragmentLength;
+    }
+
+    /**
+     * Builds the datagram of a single fragment: its index header followed by its slice of the message.
+     * @param message Buffer holding the whole message
+     * @param messageLength Number of bytes of the message
+     * @param index Index of the fragment
+     * @param fragmentLength Number of message bytes carried by each fragment
+     * @param datagram Buffer where the datagram is written (at least headerLength + fragmentLength bytes)
+     * @return Number of bytes of the datagram
+     */
+    static int writeFragment(byte[] message, int messageLength, int index, int fragmentLength, byte[] datagram){
+        datagram[0] = (byte) (index >>> 24);
+        datagram[1] = (byte) (index >>> 16);
+        datagram[2] = (byte) (index >>> 8);
+        datagram[3] = (byte) index;
+        int start = index * fragmentLength;
+        int payload = Math.min(fragmentLength, messageLength - start);
+        System.arraycopy(message, start, datagram, headerLength, payload);
+        return headerLength + payload;
+    }
+
+    /**
+     * Starts rebuilding a new message, taking from the pool a byte array big enough for all its fragments.
+     * Any message still being rebuilt is discarded.
+     * @param numberOfFragments Number of fragments announced by the sender
+     * @return false if the announced message is larger than the maximum accepted, true otherwise
+     */
+    boolean begin(int numberOfFragments){
+        abort();
+        if (numberOfFragments < 0 || (long) numberOfFragments * fragmentLength > maxMessageLength) {
+            return false;
+        }
+        buffer = acquire(numberOfFragments * fragmentLength);
+        if (receivedFragments.length < numberOfFragments) {
+            receivedFragments = new boolean[Math.max(numberOfFragments, receivedFragments.length * 2)];
+            arrivalNanos = new long[receivedFragments.length];
+        } else {
+            Arrays.fill(receivedFragments, 0, numberOfFragments, false);
+        }
+        expectedFragments = numberOfFragments;
+        receivedCount = 0;
+        length = 0;
+        return true;
+    }
+
+    /**
+     * Copies a received fragment to its place in the message being rebuilt.
+     * Datagrams that are too short, have an index out of range or were already received are ignored.
+     * @param datagram Buffer holding the received datagram
+     * @param offset Index of the first byte of the datagram
+     * @param datagramLength Number of bytes of the datagram
+     * @return true if the datagram was a new fragment of the message, false if it was ignored
+     */
+    boolean place(byte[] datagram, int offset, int datagramLength){
+        if (buffer == null || datagramLength < headerLength) {
+            return false;
+        }
+        int index = ((datagram[offset] & 0xFF) << 24) | ((datagram[offset + 1] & 0xFF) << 16)
+                | ((datagram[offset + 2] & 0xFF) << 8) | (datagram[offset + 3] & 0xFF);
+        int payload = datagramLength - headerLength;
+        if (index < 0 || index >= expectedFragments || receivedFragments[index] || payload > fragmentLength) {
+            return false;
+        }
+        System.arraycopy(datagram, offset + headerLength, buffer, index * fragmentLength, payload);
+        receivedFragments[index] = true;
+        if (recordTimings) {
+            arrivalNanos[index] = System.nanoTime();
+        }
+        receivedCount++;
+        length = Math.max(length, index * fragmentLength + payload);
+        return true;
+    }
+
+    /**
+     * Enables or disables recording the arrival time of every fragment (used by capture mode).
+     * @param recordTimings true to record arrival times
+     */
+    void recordTimings(boolean recordTimings){
+        this.recordTimings = recordTimings;
+    }
+
+    /**
+     * Arrival time of every fragment of the message being rebuilt, indexed by fragment. Must be called before the
+     * message is handed over, and only gives meaningful values when timings are being recorded.
+     * @return System.nanoTime() of the arrival of each fragment
+     */
+    long[] fragmentTimes(){
+        return Arrays.copyOf(arrivalNanos, expectedFragments);
+    }
+
+    /**
+     * @return true if every announced fragment has been received
+     */
+    boolean isComplete(){
+        return buffer != null && receivedCount == expectedFragments;
+    }
+
+    /**
+     * Hands over the rebuilt message. The caller becomes the owner of its backing array and should give it back
+     * with release once done with it.
+     * @return Buffer holding the message, from index 0 up to its limit
+     */
+    ByteBuffer complete(){
+        ByteBuffer message = ByteBuffer.wrap(buffer, 0, length);
+        buffer = null;
+        return message;
+    }
+
+    /**
+     * Decodes the rebuilt message and immediately gives its byte array back to the pool.
+     * @return The message as a String
+     */
+    String completeAsString(){
+        String message = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        abort();
+        return message;
+    }
+
+    /**
+     * Discards the message being rebuilt, if any, and gives its byte array back to the pool.
+     */
+    void abort(){
+        if (buffer != null) {
+            release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Gives back to the pool the byte array of a message previously handed over by complete.
+     * @param message Message returned by complete
+     */
+    void release(ByteBuffer message){
+        release(message.array());
+    }
+
+    /**
+     * Takes from the pool the smallest byte array that fits the message, or allocates a new one.
+     * Arrays are allocated in multiples of 1 KB, so that they can be reused by messages of similar size.
+     * @param capacity Minimum number of bytes needed
+     * @return A byte array with at least the given capacity
+     */
+    private byte[] acquire(int capacity){
+        byte[] best = null;
+        for (byte[] candidate : pool) {
+            if (candidate.length >= capacity && (best == null || candidate.length < best.length)) {
+                best = candidate;
+            }
+        }
+        if (best != null) {
+            pool.remove(best);
+            return best;
+        }
+        return new byte[Math.max(1024, (capacity + 1023) & ~1023)];
+    }
+
+    /**
+     * Returns a byte array to the pool. When the pool is full, its smallest array is dropped instead.
+     * @param array Byte array no longer in use
+     */
+    private void release(byte[] array){
+        if (pool.size() == poolSize) {
+            byte[] smallest = array;
+            for (byte[] candidate : pool) {
+                if (candidate.length < smallest.length) {
+                    smallest = candidate;
+                }
+            }
+            if (smallest == array) {
+                return;
+            }
+            pool.remove(smallest);
+        }
+        pool.add(array);
+    }
+}